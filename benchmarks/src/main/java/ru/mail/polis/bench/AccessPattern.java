@@ -0,0 +1,92 @@
+package ru.mail.polis.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Order in which benchmarks touch keys of a prepared set.
+ */
+public enum AccessPattern {
+    /** Uniformly random keys. */
+    RANDOM {
+        @Override
+        <E extends Comparable<E>> E[] sequence(E[] keys, int length, Random rnd) {
+            E[] res = Arrays.copyOf(keys, length);
+            for (int i = 0; i < length; i++) {
+                res[i] = keys[rnd.nextInt(keys.length)];
+            }
+            return res;
+        }
+    },
+    /** Ascending sweep over the keys, wrapping around. */
+    SORTED {
+        @Override
+        <E extends Comparable<E>> E[] sequence(E[] keys, int length, Random rnd) {
+            E[] sorted = keys.clone();
+            Arrays.sort(sorted);
+            E[] res = Arrays.copyOf(keys, length);
+            for (int i = 0; i < length; i++) {
+                res[i] = sorted[i % sorted.length];
+            }
+            return res;
+        }
+    },
+    /** Zipfian (theta = 0.99) popularity, hot keys are scattered over the key space. */
+    ZIPF {
+        @Override
+        <E extends Comparable<E>> E[] sequence(E[] keys, int length, Random rnd) {
+            Zipf zipf = new Zipf(keys.length, 0.99);
+            E[] res = Arrays.copyOf(keys, length);
+            for (int i = 0; i < length; i++) {
+                res[i] = keys[zipf.next(rnd)];
+            }
+            return res;
+        }
+    };
+
+    abstract <E extends Comparable<E>> E[] sequence(E[] keys, int length, Random rnd);
+
+    public <E extends Comparable<E>> E[] sequence(E[] keys, int length, long seed) {
+        return sequence(keys, length, new Random(seed));
+    }
+
+    /**
+     * Zipfian generator by Gray et al., "Quickly generating billion-record
+     * synthetic databases" (the one used by YCSB).
+     */
+    static final class Zipf {
+        private final int n;
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        Zipf(int n, double theta) {
+            this.n = n;
+            this.theta = theta;
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetan = zeta(n, theta);
+            this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        int next(Random rnd) {
+            final double u = rnd.nextDouble();
+            final double uz = u * zetan;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + Math.pow(0.5, theta)) {
+                return Math.min(1, n - 1);
+            }
+            return Math.min((int) (n * Math.pow(eta * u - eta + 1, alpha)), n - 1);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1.0 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
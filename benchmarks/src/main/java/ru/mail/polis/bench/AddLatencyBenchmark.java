@@ -0,0 +1,62 @@
+package ru.mail.polis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISet;
+
+/**
+ * Latency distribution of {@code add} into a growing set, including the
+ * inserts that trigger a resize. Every call adds a new key; once
+ * {@code maxSize} keys are added the set is recreated empty. Compare the
+ * {@code p0.999} and {@code p1.0} percentiles of the sample-time output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class AddLatencyBenchmark {
+
+    @Param({"ChainHashTable", "ChainHashTableIncremental", "OpenHashTable"})
+    public SetImpl impl;
+
+    @Param({"10000000"})
+    public int maxSize;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    private ISet set;
+    private Comparable[] keys;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = keyType.keys(0, maxSize, SetBenchmark.SEED);
+        set = impl.create();
+    }
+
+    @Benchmark
+    public boolean add() {
+        if (index == keys.length) {
+            index = 0;
+            set = impl.create();
+        }
+        return set.add(keys[index++]);
+    }
+}
@@ -0,0 +1,67 @@
+package ru.mail.polis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.BTree;
+import ru.mail.polis.ISortedSet;
+
+/**
+ * Random lookups in large trees: {@link BTree} of the given {@code fanout}
+ * against the binary trees. Cache misses per lookup are reported by
+ * running with {@code -prof perfnorm} (Linux perf), see
+ * {@code L1-dcache-load-misses} and {@code LLC-load-misses}; the fan-out
+ * is swept with {@code -p impl=BTree -p fanout=8,16,32,64,128,256}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class BTreeBenchmark {
+
+    @Param({"AVLTree", "RedBlackTree", "BTree"})
+    public SetImpl impl;
+
+    @Param({"64"})
+    public int fanout;
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    private ISortedSet set;
+    private Comparable[] hits;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Comparable[] keys = keyType.keys(0, size, SetBenchmark.SEED);
+        set = impl == SetImpl.BTree ? new BTree<>(fanout, null) : impl.createSorted();
+        for (Comparable key : keys) {
+            set.add(key);
+        }
+        hits = AccessPattern.RANDOM.sequence(keys, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 2);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return set.contains(hits[index++ & SetBenchmark.MASK]);
+    }
+}
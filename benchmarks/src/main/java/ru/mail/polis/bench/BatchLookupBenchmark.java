@@ -0,0 +1,88 @@
+package ru.mail.polis.bench;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISet;
+
+/**
+ * A batch of {@code batch} random lookups, half of them hits, in a set much
+ * larger than the cache: {@code containsAll} against a loop of single
+ * {@code contains} calls writing the same bits. Time is per batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class BatchLookupBenchmark {
+
+    @Param({"ChainHashTable", "OpenHashTable", "SwissHashTable", "CuckooHashTable",
+            "AVLTree", "RedBlackTree", "ArrayRedBlackTree"})
+    public SetImpl impl;
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    @Param({"64", "1024"})
+    public int batch;
+
+    private ISet set;
+    private Comparable[][] batches;
+    private final BitSet out = new BitSet();
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Comparable[] keys = keyType.keys(0, size, SetBenchmark.SEED);
+        Comparable[] absent = keyType.keys(size, Math.min(size, SetBenchmark.SEQUENCE_LENGTH), SetBenchmark.SEED + 1);
+        set = impl.create();
+        for (Comparable key : keys) {
+            set.add(key);
+        }
+        Comparable[] hits = AccessPattern.RANDOM.sequence(keys, SetBenchmark.SEQUENCE_LENGTH / 2, SetBenchmark.SEED + 2);
+        Comparable[] misses = AccessPattern.RANDOM.sequence(absent, SetBenchmark.SEQUENCE_LENGTH / 2, SetBenchmark.SEED + 3);
+        Comparable[] mixed = Arrays.copyOf(hits, SetBenchmark.SEQUENCE_LENGTH);
+        System.arraycopy(misses, 0, mixed, hits.length, misses.length);
+        mixed = AccessPattern.RANDOM.sequence(mixed, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 4);
+        batches = new Comparable[SetBenchmark.SEQUENCE_LENGTH / batch][];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = Arrays.copyOfRange(mixed, i * batch, (i + 1) * batch);
+        }
+    }
+
+    @Benchmark
+    public BitSet loop() {
+        final Comparable[] keys = batches[index++ & (batches.length - 1)];
+        for (int i = 0; i < keys.length; i++) {
+            out.set(i, set.contains(keys[i]));
+        }
+        return out;
+    }
+
+    @Benchmark
+    public BitSet containsAll() {
+        final Comparable[] keys = batches[index++ & (batches.length - 1)];
+        set.containsAll(keys, out);
+        return out;
+    }
+}
@@ -0,0 +1,94 @@
+package ru.mail.polis.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISortedSet;
+
+/**
+ * Loading sorted keys one by one against {@link ISortedSet#addAllSorted}:
+ * into an empty tree, and as a batch of {@code batchPercent} of the size
+ * merged into a full one. The merge benchmarks include bulk loading of
+ * the full tree, so it is their difference that matters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class BulkLoadBenchmark {
+
+    @Param({"AVLTree", "RedBlackTree"})
+    public SetImpl impl;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    @Param({"1", "10"})
+    public int batchPercent;
+
+    private Comparable[] keys;
+    private Comparable[] batch;
+    private ISortedSet set;
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        keys = keyType.keys(0, size, SetBenchmark.SEED);
+        Arrays.sort(keys);
+        batch = keyType.keys(size, size / 100 * batchPercent, SetBenchmark.SEED);
+        Arrays.sort(batch);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpSet() {
+        set = impl.createSorted();
+    }
+
+    @Benchmark
+    public ISortedSet add() {
+        for (Comparable key : keys) {
+            set.add(key);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public ISortedSet addAllSorted() {
+        set.addAllSorted(Arrays.asList(keys).iterator(), keys.length);
+        return set;
+    }
+
+    @Benchmark
+    public ISortedSet mergeAdd() {
+        set.addAllSorted(Arrays.asList(keys).iterator(), keys.length);
+        for (Comparable key : batch) {
+            set.add(key);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public ISortedSet mergeAddAllSorted() {
+        set.addAllSorted(Arrays.asList(keys).iterator(), keys.length);
+        set.addAllSorted(Arrays.asList(batch).iterator(), batch.length);
+        return set;
+    }
+}
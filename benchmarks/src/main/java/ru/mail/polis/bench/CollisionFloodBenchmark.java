@@ -0,0 +1,94 @@
+package ru.mail.polis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISet;
+
+/**
+ * Hash flooding: every key has the same {@code hashCode}, as an attacker
+ * would choose them. The keys are strings of 20 blocks "Aa" or "BB", which
+ * hash equally. Shows lookups and loading of {@code size} such keys; with
+ * tree bins they stay logarithmic, with plain chains they are linear.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class CollisionFloodBenchmark {
+
+    private static final int BLOCKS = 20;
+
+    @Param({"ChainHashTable", "ConcurrentChainHashTable"})
+    public SetImpl impl;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private String[] keys;
+    private ISet set;
+    private String[] hits;
+    private String[] misses;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = keys(0, size);
+        set = load();
+        hits = AccessPattern.RANDOM.sequence(keys, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 2);
+        misses = AccessPattern.RANDOM.sequence(keys(size, Math.min(size, SetBenchmark.SEQUENCE_LENGTH)),
+                SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 3);
+    }
+
+    /**
+     * @return keys from {@code from} to {@code from + count}, the bits of
+     * the index choose the blocks
+     */
+    static String[] keys(int from, int count) {
+        String[] res = new String[count];
+        StringBuilder sb = new StringBuilder(BLOCKS * 2);
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            for (int bit = 0; bit < BLOCKS; bit++) {
+                sb.append(((from + i) >>> bit & 1) == 0 ? "Aa" : "BB");
+            }
+            res[i] = sb.toString();
+        }
+        return res;
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        return set.contains(hits[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return set.contains(misses[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ISet load() {
+        ISet res = impl.create();
+        for (String key : keys) {
+            res.add(key);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,88 @@
+package ru.mail.polis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISet;
+
+/**
+ * Mixed read/write throughput of a set shared by all benchmark threads.
+ * Sets that are not thread-safe are wrapped into {@link SynchronizedSet}.
+ * Keys are drawn uniformly from {@code 2 * size} candidates of which
+ * {@code size} are present initially; writes are evenly split between
+ * {@code add} and {@code remove}, so the set size stays around {@code size}.
+ * <p>
+ * Scaling is measured by running with different thread counts, e.g.
+ * {@code for t in 1 2 4 8 16 32 64; do java -jar benchmarks.jar ConcurrentSetBenchmark -t $t; done}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ConcurrentSetBenchmark {
+
+    @Param({"ConcurrentChainHashTable", "ChainHashTable", "ConcurrentRedBlackTree", "RedBlackTree",
+            "ConcurrentSkipList", "AVLTree"})
+    public SetImpl impl;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    @Param({"90", "99"})
+    public int readPercent;
+
+    private ISet set;
+    private Comparable[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = keyType.keys(0, 2 * size, SetBenchmark.SEED);
+        set = impl.createShared();
+        for (int i = 0; i < size; i++) {
+            set.add(keys[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private long seed = System.nanoTime();
+
+        /**
+         * xorshift64: cheap and allocation-free, unlike a shared Random.
+         */
+        int next(int bound) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) ((seed >>> 33) % bound);
+        }
+    }
+
+    @Benchmark
+    public boolean mixed(ThreadState state) {
+        final Comparable key = keys[state.next(keys.length)];
+        final int op = state.next(200);
+        if (op < 2 * readPercent) {
+            return set.contains(key);
+        }
+        return (op & 1) == 0 ? set.add(key) : set.remove(key);
+    }
+}
@@ -0,0 +1,126 @@
+package ru.mail.polis.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.DurableSet;
+import ru.mail.polis.ISet;
+import ru.mail.polis.MappedSortedSet;
+
+/**
+ * {@link DurableSet} in a temporary directory, which should be on the
+ * device under test ({@code -Djava.io.tmpdir}).
+ * <p>
+ * {@code add}: throughput of 8 threads adding new keys, each add waits for
+ * the log to be forced, with and without group commit.
+ * <p>
+ * {@code recover}: time to open a directory holding {@code size} keys as a
+ * snapshot plus a log tail of a tenth of that many updates. A sorted set
+ * bulk-loads the snapshot, a hash table adds its keys one by one.
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class DurableSetBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Writes {
+
+        @Param({"false", "true"})
+        public boolean groupCommit;
+
+        DurableSet<Integer> set;
+        final AtomicInteger next = new AtomicInteger();
+        Path dir;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            dir = Files.createTempDirectory("durable-set");
+            set = DurableSet.open(SetImpl.RedBlackTree.create(), dir, MappedSortedSet.Codec.INTEGER,
+                    groupCommit, Long.MAX_VALUE);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            set.close();
+            delete(dir);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Recovery {
+
+        @Param({"AVLTree", "ChainHashTable"})
+        public SetImpl impl;
+
+        @Param({"10000000"})
+        public int size;
+
+        Path dir;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = Files.createTempDirectory("durable-set");
+            Comparable[] keys = KeyType.INTEGER.keys(0, size, SetBenchmark.SEED);
+            final int tail = size / 10;
+            final ISet set = impl.create();
+            try (DurableSet durable = DurableSet.open(set, dir, MappedSortedSet.Codec.INTEGER)) {
+                durable.addAll(Arrays.copyOf(keys, size - tail));
+                durable.checkpoint();
+                durable.addAll(Arrays.copyOfRange(keys, size - tail, size));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(dir);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public boolean add(Writes state) {
+        return state.set.add(state.next.getAndIncrement());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public int recover(Recovery state) throws IOException {
+        try (DurableSet<Integer> set = DurableSet.open(state.impl.create(), state.dir, MappedSortedSet.Codec.INTEGER)) {
+            return set.size();
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
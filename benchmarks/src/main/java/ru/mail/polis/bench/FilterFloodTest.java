@@ -0,0 +1,80 @@
+package ru.mail.polis.bench;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import ru.mail.polis.AVLTree;
+import ru.mail.polis.ChainHashTable;
+import ru.mail.polis.FilteredSet;
+import ru.mail.polis.FilteredSortedSet;
+
+/**
+ * Regression test of {@link FilteredSet} under keys with equal hash codes,
+ * run outside of JMH:
+ * <pre>
+ * java -cp target/benchmarks.jar ru.mail.polis.bench.FilterFloodTest 100000
+ * </pre>
+ * (number of keys). Random adds, removals and lookups of the colliding keys
+ * of {@link CollisionFloodBenchmark} mixed with ordinary ones are mirrored in
+ * a {@link HashSet}, for a filtered hash table and a filtered tree sized for
+ * a hundredth of the keys. Every result must match, and the filters must
+ * hold at most two fingerprints per element, however many keys collide.
+ * Exits with status 1 on any mismatch.
+ */
+public final class FilterFloodTest {
+
+    private FilterFloodTest() {
+    }
+
+    public static void main(String[] args) {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        final String[] colliding = CollisionFloodBenchmark.keys(0, size);
+        long errors = run(new FilteredSet<>(new ChainHashTable<String>(), size / 100 + 1, 0.01), colliding);
+        errors += run(new FilteredSortedSet<>(new AVLTree<String>(), size / 100 + 1, 0.01), colliding);
+        if (errors != 0) {
+            System.exit(1);
+        }
+    }
+
+    private static long run(FilteredSet<String> set, String[] colliding) {
+        final Random random = new Random(SetBenchmark.SEED);
+        final Set<String> expected = new HashSet<>();
+        long errors = 0;
+        for (int i = 0; i < 4 * colliding.length; i++) {
+            final String key = random.nextBoolean()
+                    ? colliding[random.nextInt(colliding.length)]
+                    : Integer.toString(random.nextInt(colliding.length));
+            final boolean ok;
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    ok = set.add(key) == expected.add(key);
+                    break;
+                case 2:
+                    ok = set.remove(key) == expected.remove(key);
+                    break;
+                default:
+                    ok = set.contains(key) == expected.contains(key);
+            }
+            if (!ok) {
+                errors++;
+            }
+        }
+        if (set.size() != expected.size()) {
+            errors++;
+        }
+        for (String key : expected) {
+            if (!set.contains(key)) {
+                errors++;
+            }
+        }
+        //равные хеши насыщают пару бакетов, а не переполняют фильтр
+        if (set.filterCount() == 0 || set.filterCount() > 8) {
+            errors++;
+        }
+        System.out.printf("%s: %d keys, %d errors, %s%n", set.getClass().getSimpleName(),
+                expected.size(), errors, set);
+        return errors;
+    }
+}
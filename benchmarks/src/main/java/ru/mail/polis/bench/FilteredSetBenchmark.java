@@ -0,0 +1,86 @@
+package ru.mail.polis.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.FilteredSet;
+import ru.mail.polis.ISet;
+
+/**
+ * Lookups with {@code hitRate} of present keys, the rest absent, in a set
+ * with and without a {@link FilteredSet} in front of it. The filter is sized
+ * for {@code size} keys; the observed filter hit ratio is printed at the end
+ * of the trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class FilteredSetBenchmark {
+
+    @Param({"AVLTree", "RedBlackTree", "ChainHashTable"})
+    public SetImpl impl;
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"INTEGER", "SHORT_STRING"})
+    public KeyType keyType;
+
+    @Param({"0.1"})
+    public double hitRate;
+
+    @Param({"0.01"})
+    public double falsePositiveRate;
+
+    @Param({"false", "true"})
+    public boolean filtered;
+
+    private ISet set;
+    private Comparable[] lookups;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Comparable[] keys = keyType.keys(0, size, SetBenchmark.SEED);
+        Comparable[] absent = keyType.keys(size, Math.min(size, SetBenchmark.SEQUENCE_LENGTH), SetBenchmark.SEED + 1);
+        set = filtered ? new FilteredSet(impl.create(), size, falsePositiveRate) : impl.create();
+        for (Comparable key : keys) {
+            set.add(key);
+        }
+        Random rnd = new Random(SetBenchmark.SEED + 2);
+        lookups = new Comparable[SetBenchmark.SEQUENCE_LENGTH];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = rnd.nextDouble() < hitRate ? keys[rnd.nextInt(keys.length)] : absent[rnd.nextInt(absent.length)];
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (set instanceof FilteredSet) {
+            System.out.println(set);
+        }
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return set.contains(lookups[index++ & SetBenchmark.MASK]);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.mail.polis.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import ru.mail.polis.ISet;
+
+/**
+ * Heap retained by a set per element, not counting the keys themselves,
+ * run outside of JMH:
+ * <pre>
+ * java -cp target/benchmarks.jar ru.mail.polis.bench.Footprint 1000000 RedBlackTree ArrayRedBlackTree
+ * </pre>
+ * (number of keys, then implementations; all of them if none is given).
+ * The keys are created before the first measurement, so only the
+ * structure of the set is counted.
+ */
+public final class Footprint {
+
+    private Footprint() {
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static void main(String[] args) {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        SetImpl[] impls = SetImpl.values();
+        if (args.length > 1) {
+            impls = new SetImpl[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                impls[i - 1] = SetImpl.valueOf(args[i]);
+            }
+        }
+        final Comparable[] keys = KeyType.INTEGER.keys(0, size, SetBenchmark.SEED);
+        for (SetImpl impl : impls) {
+            final long before = usedHeap();
+            ISet set = impl.create();
+            for (Comparable key : keys) {
+                set.add(key);
+            }
+            final long after = usedHeap();
+            System.out.printf("%-28s %6.1f bytes per element%n", impl, (double) (after - before) / set.size());
+        }
+    }
+
+    private static long usedHeap() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,91 @@
+package ru.mail.polis.bench;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ru.mail.polis.EytzingerSet;
+import ru.mail.polis.INavigableSet;
+
+/**
+ * Read-only queries of a live tree against its frozen copy, an
+ * {@link EytzingerSet} ({@code -p frozen=true}): random lookups of present
+ * and absent keys, {@code ceiling} of absent keys and a full in-order scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class FrozenSetBenchmark {
+
+    @Param({"AVLTree", "RedBlackTree"})
+    public SetImpl impl;
+
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    private INavigableSet set;
+    private Comparable[] hits;
+    private Comparable[] misses;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Comparable[] keys = keyType.keys(0, size, SetBenchmark.SEED);
+        set = impl.createNavigable();
+        for (Comparable key : keys) {
+            set.add(key);
+        }
+        if (frozen) {
+            set = set.freeze();
+        }
+        hits = AccessPattern.RANDOM.sequence(keys, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 2);
+        Comparable[] absent = keyType.keys(size, Math.min(size, SetBenchmark.SEQUENCE_LENGTH), SetBenchmark.SEED + 1);
+        misses = AccessPattern.RANDOM.sequence(absent, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 3);
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        return set.contains(hits[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return set.contains(misses[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    public Object ceiling() {
+        return set.ceiling(misses[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void iterator(Blackhole bh) {
+        for (Iterator it = set.iterator(); it.hasNext(); ) {
+            bh.consume(it.next());
+        }
+    }
+}
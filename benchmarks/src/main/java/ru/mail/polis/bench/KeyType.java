@@ -0,0 +1,61 @@
+package ru.mail.polis.bench;
+
+import java.util.Random;
+
+/**
+ * Key generators. The {@code i}-th key is unique for every {@code i} in
+ * {@code [0, 2^28)}, so present and absent keys can be drawn from disjoint
+ * index ranges without deduplication.
+ */
+public enum KeyType {
+    /** Pseudo-random {@code Integer}: {@code i} multiplied by an odd constant. */
+    INTEGER {
+        @Override
+        Comparable<?> key(int i, Random rnd) {
+            return i * 0x9E3779B9;
+        }
+    },
+    /** 8 lowercase latin letters, as OpenHashTable elements in the README. */
+    SHORT_STRING {
+        @Override
+        Comparable<?> key(int i, Random rnd) {
+            return string(i, 2, rnd);
+        }
+    },
+    /** 64 lowercase latin letters, the unique part is at the end. */
+    LONG_STRING {
+        @Override
+        Comparable<?> key(int i, Random rnd) {
+            return string(i, 58, rnd);
+        }
+    };
+
+    private static final int UNIQUE_LETTERS = 6;
+    private static final long UNIQUE_RANGE = 308_915_776L; // 26^6
+
+    abstract Comparable<?> key(int i, Random rnd);
+
+    @SuppressWarnings("unchecked")
+    public <E extends Comparable<E>> E[] keys(int from, int count, long seed) {
+        Random rnd = new Random(seed);
+        Comparable<?>[] keys = new Comparable<?>[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = key(from + i, rnd);
+        }
+        return (E[]) keys;
+    }
+
+    private static String string(int i, int randomLetters, Random rnd) {
+        char[] chars = new char[randomLetters + UNIQUE_LETTERS];
+        for (int j = 0; j < randomLetters; j++) {
+            chars[j] = (char) ('a' + rnd.nextInt(26));
+        }
+        //биекция на [0, 26^6): множитель взаимно прост с 26
+        long unique = (i * 0x5DEECE66DL + 11) % UNIQUE_RANGE;
+        for (int j = chars.length - 1; j >= randomLetters; j--) {
+            chars[j] = (char) ('a' + unique % 26);
+            unique /= 26;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,102 @@
+package ru.mail.polis.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISortedSet;
+import ru.mail.polis.MappedSortedSet;
+
+/**
+ * Start-up of a set of {@code size} keys: rebuilding {@code impl} with
+ * {@code add} calls against opening a file written by
+ * {@link MappedSortedSet#write}, and random lookups in both afterwards.
+ * The file is in the temporary directory and mostly stays in the page
+ * cache, so the lookups show the cost of decoding keys, not of disk reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class MappedSetBenchmark {
+
+    @Param({"RedBlackTree"})
+    public SetImpl impl;
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"INTEGER", "SHORT_STRING"})
+    public KeyType keyType;
+
+    private Comparable[] keys;
+    private Comparable[] hits;
+    private int index;
+    private MappedSortedSet.Codec codec;
+    private Path file;
+    private ISortedSet tree;
+    private MappedSortedSet mapped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        keys = keyType.keys(0, size, SetBenchmark.SEED);
+        hits = AccessPattern.RANDOM.sequence(keys, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 2);
+        codec = keyType == KeyType.INTEGER ? MappedSortedSet.Codec.INTEGER : MappedSortedSet.Codec.STRING;
+        tree = rebuild();
+        file = Files.createTempFile("set", ".bin");
+        MappedSortedSet.write(tree, file, codec);
+        mapped = open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mapped = null;
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ISortedSet rebuild() {
+        ISortedSet set = impl.createSorted();
+        for (Comparable key : keys) {
+            set.add(key);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public MappedSortedSet open() throws IOException {
+        return MappedSortedSet.open(file, codec);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean containsTree() {
+        return tree.contains(hits[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean containsMapped() {
+        return mapped.contains(hits[index++ & SetBenchmark.MASK]);
+    }
+}
@@ -0,0 +1,79 @@
+package ru.mail.polis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISet;
+import ru.mail.polis.SetMetrics;
+import ru.mail.polis.SetStatistics;
+
+/**
+ * Cost of the {@link SetMetrics} instrumentation: {@code contains} of
+ * present and absent keys with a {@link SetStatistics} attached or not
+ * ({@code attached}), in a JVM with metrics disabled ({@code disabled}) and
+ * enabled ({@code enabled}). Disabled metrics must cost nothing, with or
+ * without a receiver attached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class MetricsOverheadBenchmark {
+
+    @Param({"ChainHashTable", "OpenHashTable", "RedBlackTree"})
+    public SetImpl impl;
+
+    @Param({"false", "true"})
+    public boolean attached;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    private ISet set;
+    private Comparable[] probes;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        set = impl.create();
+        if (attached) {
+            set.setMetrics(new SetStatistics());
+        }
+        Comparable[] keys = keyType.keys(0, size, SetBenchmark.SEED);
+        for (Comparable key : keys) {
+            set.add(key);
+        }
+        //половина запросов - промахи
+        Comparable[] mixed = keyType.keys(0, size * 2, SetBenchmark.SEED);
+        probes = AccessPattern.RANDOM.sequence(mixed, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 2);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+    public boolean disabled() {
+        return set.contains(probes[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g", "-Dru.mail.polis.metrics=true"})
+    public boolean enabled() {
+        return set.contains(probes[index++ & SetBenchmark.MASK]);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.mail.polis.bench;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ru.mail.polis.INavigableSet;
+
+/**
+ * Navigation queries and range scans of {@code scanLength} elements
+ * through a {@code tailSet} view, starting from absent keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class NavigableSetBenchmark {
+
+    @Param({"BinarySearchTree", "AVLTree", "RedBlackTree"})
+    public SetImpl impl;
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    @Param({"100"})
+    public int scanLength;
+
+    private INavigableSet set;
+    private Comparable[] probes;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        set = impl.createNavigable();
+        for (Comparable key : keyType.keys(0, size, SetBenchmark.SEED)) {
+            set.add(key);
+        }
+        Comparable[] absent = keyType.keys(size, Math.min(size, SetBenchmark.SEQUENCE_LENGTH), SetBenchmark.SEED + 1);
+        probes = AccessPattern.RANDOM.sequence(absent, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 2);
+    }
+
+    @Benchmark
+    public Object ceiling() {
+        return set.ceiling(probes[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    public Object floor() {
+        return set.floor(probes[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    public void rangeScan(Blackhole bh) {
+        Iterator it = set.tailSet(probes[index++ & SetBenchmark.MASK]).iterator();
+        for (int i = 0; i < scanLength && it.hasNext(); i++) {
+            bh.consume(it.next());
+        }
+    }
+}
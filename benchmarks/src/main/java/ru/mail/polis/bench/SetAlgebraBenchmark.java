@@ -0,0 +1,108 @@
+package ru.mail.polis.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.AVLTree;
+
+/**
+ * Join-based {@link AVLTree#union}, {@link AVLTree#intersection} and
+ * {@link AVLTree#difference} of a tree of {@code size} keys and a tree of
+ * {@code size / ratio} keys, half of which are shared, against the same
+ * operations done with {@code contains}/{@code add}/{@code remove}.
+ * Scaling is seen by running with different
+ * {@code -jvmArgsAppend -Djava.util.concurrent.ForkJoinPool.common.parallelism=N}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SetAlgebraBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"1", "100"})
+    public int ratio;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    private Comparable[] keys;
+    private Comparable[] otherKeys;
+    private AVLTree a;
+    private AVLTree b;
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        keys = keyType.keys(0, size, SetBenchmark.SEED);
+        Arrays.sort(keys);
+        final int otherSize = size / ratio;
+        otherKeys = keyType.keys(size - otherSize / 2, otherSize, SetBenchmark.SEED);
+        Arrays.sort(otherKeys);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpTrees() {
+        a = AVLTree.fromSorted(Arrays.asList(keys).iterator(), keys.length);
+        b = AVLTree.fromSorted(Arrays.asList(otherKeys).iterator(), otherKeys.length);
+    }
+
+    @Benchmark
+    public AVLTree union() {
+        return AVLTree.union(a, b);
+    }
+
+    @Benchmark
+    public AVLTree intersection() {
+        return AVLTree.intersection(a, b);
+    }
+
+    @Benchmark
+    public AVLTree difference() {
+        return AVLTree.difference(a, b);
+    }
+
+    @Benchmark
+    public AVLTree unionByAdd() {
+        for (Object key : b) {
+            a.add((Comparable) key);
+        }
+        return a;
+    }
+
+    @Benchmark
+    public AVLTree intersectionByContains() {
+        AVLTree res = new AVLTree();
+        for (Object key : b) {
+            if (a.contains((Comparable) key)) {
+                res.add((Comparable) key);
+            }
+        }
+        return res;
+    }
+
+    @Benchmark
+    public AVLTree differenceByRemove() {
+        for (Object key : b) {
+            a.remove((Comparable) key);
+        }
+        return a;
+    }
+}
@@ -0,0 +1,88 @@
+package ru.mail.polis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISet;
+
+/**
+ * Point operations of every {@link ISet} implementation. The set is filled
+ * with {@code size} keys once per trial; {@code addRemove} and {@code removeAdd}
+ * perform two updates per call, so the set size stays constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SetBenchmark {
+
+    static final long SEED = 42;
+    static final int SEQUENCE_LENGTH = 1 << 20;
+    static final int MASK = SEQUENCE_LENGTH - 1;
+
+    @Param
+    public SetImpl impl;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param
+    public KeyType keyType;
+
+    @Param
+    public AccessPattern pattern;
+
+    private ISet set;
+    private Comparable[] hits;
+    private Comparable[] misses;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Comparable[] keys = keyType.keys(0, size, SEED);
+        Comparable[] absent = keyType.keys(size, Math.min(size, SEQUENCE_LENGTH), SEED + 1);
+        set = impl.create();
+        for (Comparable key : keys) {
+            set.add(key);
+        }
+        hits = pattern.sequence(keys, SEQUENCE_LENGTH, SEED + 2);
+        misses = pattern.sequence(absent, SEQUENCE_LENGTH, SEED + 3);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return set.contains(hits[index++ & MASK]);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return set.contains(misses[index++ & MASK]);
+    }
+
+    @Benchmark
+    public boolean addRemove() {
+        final Comparable key = misses[index++ & MASK];
+        return set.add(key) & set.remove(key);
+    }
+
+    @Benchmark
+    public boolean removeAdd() {
+        final Comparable key = hits[index++ & MASK];
+        return set.remove(key) & set.add(key);
+    }
+}
@@ -0,0 +1,89 @@
+package ru.mail.polis.bench;
+
+import java.util.function.Supplier;
+
+import ru.mail.polis.AVLTree;
+import ru.mail.polis.ArrayRedBlackTree;
+import ru.mail.polis.BTree;
+import ru.mail.polis.BinarySearchTree;
+import ru.mail.polis.ChainHashTable;
+import ru.mail.polis.ConcurrentChainHashTable;
+import ru.mail.polis.ConcurrentRedBlackTree;
+import ru.mail.polis.ConcurrentSkipList;
+import ru.mail.polis.CuckooHashTable;
+import ru.mail.polis.INavigableSet;
+import ru.mail.polis.ISet;
+import ru.mail.polis.ISortedSet;
+import ru.mail.polis.OpenHashTable;
+import ru.mail.polis.PersistentAVLTree;
+import ru.mail.polis.RedBlackTree;
+import ru.mail.polis.SwissHashTable;
+
+/**
+ * Implementations under benchmark, referenced by name from {@code @Param}.
+ */
+@SuppressWarnings("rawtypes")
+public enum SetImpl {
+    ChainHashTable(ChainHashTable::new),
+    ChainHashTableIncremental(() -> new ChainHashTable<>(null, true)),
+    ConcurrentChainHashTable(ConcurrentChainHashTable::new, true),
+    OpenHashTable(OpenHashTable::new),
+    SwissHashTable(SwissHashTable::new),
+    CuckooHashTable(CuckooHashTable::new),
+    BinarySearchTree(BinarySearchTree::new),
+    AVLTree(AVLTree::new),
+    PersistentAVLTree(PersistentAVLTree::new, true),
+    BTree(BTree::new),
+    RedBlackTree(RedBlackTree::new),
+    ArrayRedBlackTree(ArrayRedBlackTree::new),
+    ConcurrentRedBlackTree(ConcurrentRedBlackTree::new, true),
+    ConcurrentSkipList(ConcurrentSkipList::new, true);
+
+    private final Supplier<ISet> factory;
+    private final boolean threadSafe;
+
+    SetImpl(Supplier<ISet> factory) {
+        this(factory, false);
+    }
+
+    SetImpl(Supplier<ISet> factory, boolean threadSafe) {
+        this.factory = factory;
+        this.threadSafe = threadSafe;
+    }
+
+    public boolean isThreadSafe() {
+        return threadSafe;
+    }
+
+    /**
+     * @return a set that can be shared between threads: the implementation
+     * itself if it is thread-safe, otherwise one guarded by a global lock
+     */
+    public <E extends Comparable<E>> ISet<E> createShared() {
+        ISet<E> set = create();
+        return threadSafe ? set : new SynchronizedSet<>(set);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <E extends Comparable<E>> ISet<E> create() {
+        return factory.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <E extends Comparable<E>> ISortedSet<E> createSorted() {
+        ISet set = factory.get();
+        if (!(set instanceof ISortedSet)) {
+            throw new IllegalArgumentException(name() + " is not a sorted set");
+        }
+        return (ISortedSet) set;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <E extends Comparable<E>> INavigableSet<E> createNavigable() {
+        ISet set = factory.get();
+        if (!(set instanceof INavigableSet)) {
+            throw new IllegalArgumentException(name() + " is not a navigable set");
+        }
+        return (INavigableSet) set;
+    }
+}
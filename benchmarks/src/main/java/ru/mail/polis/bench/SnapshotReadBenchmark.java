@@ -0,0 +1,72 @@
+package ru.mail.polis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISet;
+
+/**
+ * Throughput of readers calling {@code contains} while one writer keeps
+ * adding and removing keys, for {@link ru.mail.polis.PersistentAVLTree},
+ * whose readers never lock, against an {@link ru.mail.polis.AVLTree} behind
+ * a global lock. The number of readers is set by {@code -tg N,1}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SnapshotReadBenchmark {
+
+    @Param({"PersistentAVLTree", "AVLTree"})
+    public SetImpl impl;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"INTEGER"})
+    public KeyType keyType;
+
+    private ISet set;
+    private Comparable[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = keyType.keys(0, 2 * size, SetBenchmark.SEED);
+        set = impl.createShared();
+        for (int i = 0; i < size; i++) {
+            set.add(keys[i]);
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public boolean read(ConcurrentSetBenchmark.ThreadState state) {
+        return set.contains(keys[state.next(keys.length)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public boolean write(ConcurrentSetBenchmark.ThreadState state) {
+        final Comparable key = keys[state.next(keys.length)];
+        return state.next(2) == 0 ? set.add(key) : set.remove(key);
+    }
+}
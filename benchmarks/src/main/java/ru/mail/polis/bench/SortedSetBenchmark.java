@@ -0,0 +1,90 @@
+package ru.mail.polis.bench;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ru.mail.polis.ISortedSet;
+
+/**
+ * Whole-set operations of the {@link ISortedSet} implementations:
+ * materializing {@code inorderTraverse} against lazy iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SortedSetBenchmark {
+
+    @Param({"BinarySearchTree", "AVLTree", "RedBlackTree", "BTree"})
+    public SetImpl impl;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param
+    public KeyType keyType;
+
+    private ISortedSet set;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        set = impl.createSorted();
+        for (Comparable key : keyType.keys(0, size, SetBenchmark.SEED)) {
+            set.add(key);
+        }
+    }
+
+    @Benchmark
+    public List inorderTraverse() {
+        return set.inorderTraverse();
+    }
+
+    @Benchmark
+    public void iterator(Blackhole bh) {
+        for (Iterator it = set.iterator(); it.hasNext(); ) {
+            bh.consume(it.next());
+        }
+    }
+
+    @Benchmark
+    public void descendingIterator(Blackhole bh) {
+        for (Iterator it = set.descendingIterator(); it.hasNext(); ) {
+            bh.consume(it.next());
+        }
+    }
+
+    @Benchmark
+    public long parallelStream() {
+        Stream<?> stream = set.stream();
+        return stream.parallel().filter(value -> value.hashCode() % 3 == 0).count();
+    }
+
+    @Benchmark
+    public Object first() {
+        return set.first();
+    }
+
+    @Benchmark
+    public Object last() {
+        return set.last();
+    }
+}
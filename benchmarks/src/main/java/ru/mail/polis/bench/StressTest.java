@@ -0,0 +1,112 @@
+package ru.mail.polis.bench;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.mail.polis.ISet;
+import ru.mail.polis.ISortedSet;
+
+/**
+ * Concurrency stress test of a thread-safe set, run outside of JMH:
+ * <pre>
+ * java -cp target/benchmarks.jar ru.mail.polis.bench.StressTest ConcurrentSkipList 8 10
+ * </pre>
+ * (implementation, threads, seconds). Every thread adds and removes its own
+ * keys, those equal to its index modulo the number of threads, and mirrors
+ * them in a private {@link HashSet}, so the result of every operation on
+ * the shared set is known. Threads also check that concurrent iteration of
+ * a sorted set is strictly ascending. At the end the set must hold exactly
+ * the union of the private sets. Exits with status 1 on any mismatch.
+ */
+public final class StressTest {
+
+    private static final int KEYS_PER_THREAD = 1 << 16;
+
+    private StressTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final SetImpl impl = SetImpl.valueOf(args.length > 0 ? args[0] : "ConcurrentSkipList");
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        final long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        if (!impl.isThreadSafe()) {
+            throw new IllegalArgumentException(impl + " is not thread-safe");
+        }
+        final ISet<Integer> set = impl.create();
+        final long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong ops = new AtomicLong();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Set<Integer>[] own = new Set[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            own[id] = new HashSet<>();
+            workers[id] = new Thread(() -> {
+                final Random random = new Random(id);
+                final Set<Integer> mine = own[id];
+                long n = 0;
+                while (System.nanoTime() < deadline) {
+                    final Integer key = random.nextInt(KEYS_PER_THREAD) * threads + id;
+                    final boolean ok;
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            ok = set.add(key) == mine.add(key);
+                            break;
+                        case 1:
+                            ok = set.remove(key) == mine.remove(key);
+                            break;
+                        default:
+                            ok = set.contains(key) == mine.contains(key);
+                    }
+                    if (!ok) {
+                        errors.incrementAndGet();
+                    }
+                    if ((++n & 0xFFFF) == 0 && set instanceof ISortedSet && !ascending((ISortedSet<Integer>) set)) {
+                        errors.incrementAndGet();
+                    }
+                }
+                ops.addAndGet(n);
+            });
+            workers[id].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Set<Integer> expected = new TreeSet<>();
+        for (Set<Integer> mine : own) {
+            expected.addAll(mine);
+        }
+        if (set.size() != expected.size()) {
+            errors.incrementAndGet();
+        }
+        for (Integer key : expected) {
+            if (!set.contains(key)) {
+                errors.incrementAndGet();
+            }
+        }
+        if (set instanceof ISortedSet && !expected.equals(new TreeSet<>(((ISortedSet<Integer>) set).inorderTraverse()))) {
+            errors.incrementAndGet();
+        }
+        System.out.printf("%s: %d threads, %d operations, %d errors%n", impl, threads, ops.get(), errors.get());
+        if (errors.get() != 0) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean ascending(ISortedSet<Integer> set) {
+        Integer prev = null;
+        for (Iterator<Integer> it = set.iterator(); it.hasNext(); ) {
+            final Integer curr = it.next();
+            if (prev != null && prev >= curr) {
+                return false;
+            }
+            prev = curr;
+        }
+        return true;
+    }
+}
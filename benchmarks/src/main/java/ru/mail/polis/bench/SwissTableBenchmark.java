@@ -0,0 +1,71 @@
+package ru.mail.polis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.mail.polis.ISet;
+import ru.mail.polis.SwissHashTable;
+
+/**
+ * Hits and misses of string keys in {@link SwissHashTable} against the
+ * other hash tables. The sizes fill the Swiss table to a load factor of
+ * 0.87, just below its resize threshold of 7/8; the other tables resize at
+ * 1/2 and are filled to about 0.43.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SwissTableBenchmark {
+
+    @Param({"ChainHashTable", "OpenHashTable", "SwissHashTable"})
+    public SetImpl impl;
+
+    @Param({"114000", "913000"})
+    public int size;
+
+    @Param({"SHORT_STRING", "LONG_STRING"})
+    public KeyType keyType;
+
+    private ISet set;
+    private Comparable[] hits;
+    private Comparable[] misses;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Comparable[] keys = keyType.keys(0, size, SetBenchmark.SEED);
+        set = impl.create();
+        for (Comparable key : keys) {
+            set.add(key);
+        }
+        hits = AccessPattern.RANDOM.sequence(keys, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 2);
+        Comparable[] absent = keyType.keys(size, Math.min(size, SetBenchmark.SEQUENCE_LENGTH), SetBenchmark.SEED + 1);
+        misses = AccessPattern.RANDOM.sequence(absent, SetBenchmark.SEQUENCE_LENGTH, SetBenchmark.SEED + 3);
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        return set.contains(hits[index++ & SetBenchmark.MASK]);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return set.contains(misses[index++ & SetBenchmark.MASK]);
+    }
+}
@@ -0,0 +1,40 @@
+package ru.mail.polis.bench;
+
+import ru.mail.polis.ISet;
+
+/**
+ * Global-lock wrapper, the baseline for sharing a single-threaded set.
+ */
+public class SynchronizedSet<E extends Comparable<E>> implements ISet<E> {
+
+    private final ISet<E> set;
+
+    public SynchronizedSet(ISet<E> set) {
+        this.set = set;
+    }
+
+    @Override
+    public synchronized int size() {
+        return set.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return set.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean contains(E value) {
+        return set.contains(value);
+    }
+
+    @Override
+    public synchronized boolean add(E value) {
+        return set.add(value);
+    }
+
+    @Override
+    public synchronized boolean remove(E value) {
+        return set.remove(value);
+    }
+}
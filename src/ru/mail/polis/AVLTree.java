@@ -1,17 +1,21 @@
 package ru.mail.polis;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-public class AVLTree<E extends Comparable<E>> implements ISortedSet<E> {
+public class AVLTree<E extends Comparable<E>> implements IOrderStatisticSet<E>, INavigableSet<E> {
     class Node {
         E data;
         int height;
+        int count; //число узлов в поддереве
         Node left;
         Node right;
 
         Node(E data) {
             this.data = data;
             height = 1;
+            count = 1;
         }
 
         int balanceFactor() {
@@ -24,12 +28,19 @@ public class AVLTree<E extends Comparable<E>> implements ISortedSet<E> {
             final int hl = left != null ? left.height : 0;
             final int hr = right != null? right.height : 0;
             height = Math.max(hl, hr) + 1;
+            count = count(left) + count(right) + 1;
         }
     }
 
+    private static final int MAX_HEIGHT = 64; //высота AVL-дерева не больше 1.45 * log2(n)
+    private static final int PARALLEL_THRESHOLD = 1 << 13; //меньшие поддеревья обрабатываются в одном потоке
+
     private Node root;
     private int size;
+    private SetMetrics metrics;
     private final Comparator<E> comparator;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Node[] path = (Node[]) new AVLTree.Node[MAX_HEIGHT];
 
     public AVLTree() {
         this.comparator = null;
@@ -68,7 +79,7 @@ public class AVLTree<E extends Comparable<E>> implements ISortedSet<E> {
         if (isEmpty()) {
             throw new NoSuchElementException("Tree is empty");
         }
-        List<E> res = new LinkedList<>();
+        List<E> res = new ArrayList<>(size);
         inorderTraverse(root, res);
         return res;
     }
@@ -80,6 +91,26 @@ public class AVLTree<E extends Comparable<E>> implements ISortedSet<E> {
         }
     }
 
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new Itr(true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return new Split(root, size);
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return new EytzingerSet<>(this, comparator);
+    }
+
     @Override
     public int size() {
         return size;
@@ -95,12 +126,14 @@ public class AVLTree<E extends Comparable<E>> implements ISortedSet<E> {
         if (value == null) {
             throw new NullPointerException("Value is null");
         }
+        int depth = 0;
         if (!isEmpty()) {
             Node curr = root;
             while (curr != null) {
+                depth++;
                 int cmp = compare(curr.data, value);
                 if (cmp == 0) {
-                    return true;
+                    return probed(depth, true);
                 } else if (cmp < 0) {
                     curr = curr.right;
                 } else {
@@ -108,96 +141,671 @@ public class AVLTree<E extends Comparable<E>> implements ISortedSet<E> {
                 }
             }
         }
-        return false;
+        return probed(depth, false);
+    }
+
+    /**
+     * Descends for a group of keys in lockstep, one level of all the
+     * searches at a time, so the nodes they load are fetched in parallel.
+     */
+    @Override
+    public void containsAll(E[] keys, BitSet out) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Node[] curr = (Node[]) new AVLTree.Node[Batch.GROUP]; //null - поиск закончен
+        final int[] depth = new int[Batch.GROUP];
+        for (int from = 0; from < keys.length; from += Batch.GROUP) {
+            final int n = Math.min(Batch.GROUP, keys.length - from);
+            int active = 0;
+            for (int i = 0; i < n; i++) {
+                if (keys[from + i] == null) {
+                    throw new NullPointerException("Value is null");
+                }
+                out.clear(from + i);
+                depth[i] = 0;
+                curr[i] = root;
+                if (curr[i] != null) {
+                    active++;
+                } else {
+                    probed(0, false);
+                }
+            }
+            while (active > 0) {
+                for (int i = 0; i < n; i++) {
+                    final Node node = curr[i];
+                    if (node == null) {
+                        continue;
+                    }
+                    depth[i]++;
+                    final int cmp = compare(node.data, keys[from + i]);
+                    final Node next = cmp == 0 ? null : cmp < 0 ? node.right : node.left;
+                    if (next == null) {
+                        out.set(from + i, probed(depth[i], cmp == 0));
+                        curr[i] = null;
+                        active--;
+                    } else {
+                        curr[i] = next;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean addAll(E[] keys) {
+        return Batch.addAll(this, keys);
     }
 
-    private boolean isAdded;
     @Override
     public boolean add(E value) {
         if (value == null) {
             throw new NullPointerException("Value is null");
         }
-        isAdded = true;
-        root = new Object() {
-            Node insert(Node elem, E value) {
-                if (elem == null) {
-                    return new Node(value);
-                }
-                int cmp = compare(value, elem.data);
-                if (cmp < 0) {
-                    elem.left = insert(elem.left, value);
-                } else if (cmp > 0) {
-                    elem.right = insert(elem.right, value);
-                } else {
-                    isAdded = false;
-                }
-                return balance(elem);
+        final Node[] path = this.path;
+        int depth = 0;
+        Node curr = root;
+        int cmp = 0;
+        while (curr != null) {
+            cmp = compare(value, curr.data);
+            if (cmp == 0) {
+                return false;
             }
-        }.insert(root, value);
-        if (isAdded) {
-            size++;
+            path[depth++] = curr;
+            curr = cmp < 0 ? curr.left : curr.right;
         }
-        return isAdded;
+        Node node = new Node(value);
+        if (depth == 0) {
+            root = node;
+        } else if (cmp < 0) {
+            path[depth - 1].left = node;
+        } else {
+            path[depth - 1].right = node;
+        }
+        size++;
+        rebalance(depth, 1);
+        return true;
     }
-    /*private int height(Node elem) {
-        return elem == null ? -1 : elem.height;
-    }*/
 
-    private boolean isRemoved;
     @Override
     public boolean remove(E value) {
         if (value == null) {
             throw new NullPointerException("Value is null");
         }
-        isRemoved = false;
-        root = new Object() {
-            Node delete(Node elem, E value) {
-                if (elem == null) {
-                    return null;
+        final Node[] path = this.path;
+        int depth = 0;
+        Node curr = root;
+        while (curr != null) {
+            int cmp = compare(value, curr.data);
+            if (cmp == 0) {
+                break;
+            }
+            path[depth++] = curr;
+            curr = cmp < 0 ? curr.left : curr.right;
+        }
+        if (curr == null) {
+            return false;
+        }
+        if (curr.left != null && curr.right != null) {
+            //заменяем значение наименьшим из больших и удаляем его узел
+            path[depth++] = curr;
+            Node min = curr.right;
+            while (min.left != null) {
+                path[depth++] = min;
+                min = min.left;
+            }
+            curr.data = min.data;
+            curr = min;
+        }
+        replaceChild(depth, curr, curr.left != null ? curr.left : curr.right);
+        curr.data = null;
+        curr.left = null;
+        curr.right = null;
+        size--;
+        rebalance(depth, -1);
+        return true;
+    }
+
+    /**
+     * Rebalances the first {@code depth} nodes of {@link #path} bottom-up and
+     * stops as soon as a subtree keeps its former height; above that point
+     * only subtree sizes are adjusted by {@code delta}.
+     */
+    private void rebalance(int depth, int delta) {
+        int i = depth - 1;
+        for (; i >= 0; i--) {
+            Node elem = path[i];
+            final int oldHeight = elem.height;
+            Node balanced = balance(elem);
+            if (balanced != elem) {
+                replaceChild(i, elem, balanced);
+            }
+            if (balanced.height == oldHeight) {
+                break;
+            }
+        }
+        while (--i >= 0) {
+            path[i].count += delta;
+        }
+    }
+
+    private void replaceChild(int depth, Node elem, Node child) {
+        if (depth == 0) {
+            root = child;
+        } else {
+            Node parent = path[depth - 1];
+            if (parent.left == elem) {
+                parent.left = child;
+            } else {
+                parent.right = child;
+            }
+        }
+    }
+
+    @Override
+    public int rank(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        int rank = 0;
+        Node curr = root;
+        while (curr != null) {
+            int cmp = compare(value, curr.data);
+            if (cmp <= 0) {
+                if (cmp == 0) {
+                    return rank + count(curr.left);
                 }
-                int cmp = compare(value, elem.data);
-                if (cmp < 0) {
-                    elem.left = delete(elem.left, value);
-                } else if (cmp > 0) {
-                    elem.right = delete(elem.right, value);
-                } else {
-                    isRemoved = true;
-                    if (elem.left == null) {
-                        return elem.right;
-                    } else if (elem.right == null) {
-                        return elem.left;
-                    } else {
-                        Node r = elem;
-                        elem = findMin(r.right);
-                        elem.right = removeMin(r.right);
-                        elem.left = r.left;
-                    }
+                curr = curr.left;
+            } else {
+                rank += count(curr.left) + 1;
+                curr = curr.right;
+            }
+        }
+        return rank;
+    }
+
+    @Override
+    public E select(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        Node curr = root;
+        while (true) {
+            final int left = count(curr.left);
+            if (index < left) {
+                curr = curr.left;
+            } else if (index > left) {
+                index -= left + 1;
+                curr = curr.right;
+            } else {
+                return curr.data;
+            }
+        }
+    }
+
+    @Override
+    public int countInRange(E from, E to) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (compare(from, to) >= 0) {
+            return 0;
+        }
+        return rank(to) - rank(from);
+    }
+
+    private int count(Node elem) {
+        return elem != null ? elem.count : 0;
+    }
+
+    public static <E extends Comparable<E>> AVLTree<E> fromSorted(Iterator<? extends E> sorted, int size) {
+        return fromSorted(sorted, size, null);
+    }
+
+    /**
+     * Builds a perfectly balanced tree in O(size).
+     *
+     * @param sorted iterator over the elements in strictly ascending order
+     * @param size   number of elements to take from the iterator
+     * @throws IllegalArgumentException if the elements are not strictly ascending
+     */
+    public static <E extends Comparable<E>> AVLTree<E> fromSorted(Iterator<? extends E> sorted, int size,
+                                                                  Comparator<E> comparator) {
+        AVLTree<E> tree = new AVLTree<>(comparator);
+        tree.addAllSorted(sorted, size);
+        return tree;
+    }
+
+    /**
+     * Small batches are added one by one, larger ones are merged with the
+     * nodes by {@link TreeIterator#merge}, and the tree is rebuilt perfectly
+     * balanced in O(n + size).
+     */
+    @Override
+    public boolean addAllSorted(Iterator<? extends E> sorted, int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size is negative: " + size);
+        }
+        if ((long) size * (32 - Integer.numberOfLeadingZeros(this.size)) < this.size) {
+            return INavigableSet.super.addAllSorted(sorted, size);
+        }
+        final Object[] nodes = new Itr(false).merge(this.size, sorted, size, Node::new, this::compare);
+        root = build(nodes, 0, nodes.length);
+        final boolean changed = nodes.length != this.size;
+        this.size = nodes.length;
+        return changed;
+    }
+
+    /**
+     * @return root of a perfectly balanced tree of nodes[lo, hi), which are in order
+     */
+    @SuppressWarnings("unchecked")
+    private Node build(Object[] nodes, int lo, int hi) {
+        if (lo >= hi) {
+            return null;
+        }
+        final int mid = (lo + hi) >>> 1;
+        Node elem = (Node) nodes[mid];
+        elem.left = build(nodes, lo, mid);
+        elem.right = build(nodes, mid + 1, hi);
+        elem.fixHeight();
+        return elem;
+    }
+
+    /**
+     * Joins the trees around the pivot key, the elements of {@code left} must be
+     * less than it and the elements of {@code right} greater. Takes O(|h(left) - h(right)|).
+     * Both trees are consumed: their nodes are relinked into the result and the
+     * trees are left empty.
+     *
+     * @throws IllegalArgumentException if the trees are ordered differently or overlap the pivot
+     */
+    public static <E extends Comparable<E>> AVLTree<E> join(AVLTree<E> left, E key, AVLTree<E> right) {
+        if (key == null) {
+            throw new NullPointerException("Value is null");
+        }
+        AVLTree<E> res = result(left, right);
+        if (left.root != null && res.compare(left.last(), key) >= 0
+                || right.root != null && res.compare(key, right.first()) >= 0) {
+            throw new IllegalArgumentException("Trees overlap the pivot key");
+        }
+        res.setRoot(res.join(left.root, res.new Node(key), right.root));
+        left.clear();
+        right.clear();
+        return res;
+    }
+
+    /**
+     * Moves the elements greater than or equal to {@code key} into a new tree
+     * in O(log n), the lesser ones stay in this tree.
+     *
+     * @return tree of the elements greater than or equal to {@code key}
+     */
+    public AVLTree<E> split(E key) {
+        if (key == null) {
+            throw new NullPointerException("Value is null");
+        }
+        Pieces pieces = new Pieces();
+        split(root, key, pieces);
+        AVLTree<E> res = new AVLTree<>(comparator);
+        res.setRoot(pieces.middle != null ? join(null, pieces.middle, pieces.right) : pieces.right);
+        setRoot(pieces.left);
+        return res;
+    }
+
+    /**
+     * Union of the trees in O(m log(n/m + 1)) work for sizes m <= n, computed
+     * in parallel on the common {@link ForkJoinPool}. Both trees are consumed:
+     * their nodes are relinked into the result and the trees are left empty.
+     *
+     * @throws IllegalArgumentException if the trees are ordered differently
+     */
+    public static <E extends Comparable<E>> AVLTree<E> union(AVLTree<E> a, AVLTree<E> b) {
+        return apply(SetOperation.UNION, a, b);
+    }
+
+    /**
+     * Intersection of the trees, see {@link #union}.
+     */
+    public static <E extends Comparable<E>> AVLTree<E> intersection(AVLTree<E> a, AVLTree<E> b) {
+        return apply(SetOperation.INTERSECTION, a, b);
+    }
+
+    /**
+     * Elements of {@code a} that are not in {@code b}, see {@link #union}.
+     */
+    public static <E extends Comparable<E>> AVLTree<E> difference(AVLTree<E> a, AVLTree<E> b) {
+        return apply(SetOperation.DIFFERENCE, a, b);
+    }
+
+    private enum SetOperation {
+        UNION, INTERSECTION, DIFFERENCE
+    }
+
+    private static <E extends Comparable<E>> AVLTree<E> apply(SetOperation op, AVLTree<E> a, AVLTree<E> b) {
+        AVLTree<E> res = result(a, b);
+        if (a == b) {
+            res.setRoot(op == SetOperation.DIFFERENCE ? null : a.root);
+        } else {
+            res.setRoot(ForkJoinPool.commonPool().invoke(res.new SetTask(op, a.root, b.root)));
+        }
+        a.clear();
+        b.clear();
+        return res;
+    }
+
+    private static <E extends Comparable<E>> AVLTree<E> result(AVLTree<E> a, AVLTree<E> b) {
+        if (!Objects.equals(a.comparator, b.comparator)) {
+            throw new IllegalArgumentException("Trees are ordered differently");
+        }
+        return new AVLTree<>(a.comparator);
+    }
+
+    private void setRoot(Node root) {
+        this.root = root;
+        this.size = count(root);
+    }
+
+    private void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Result of a split: the subtrees of the lesser and of the greater elements
+     * and the node equal to the key, if any.
+     */
+    private class Pieces {
+        Node left;
+        Node middle;
+        Node right;
+    }
+
+    /**
+     * Applies the operation to the subtrees: splits one of them by the root
+     * of the other and recurses into both halves, forking the right one
+     * while the subtrees are large.
+     */
+    @SuppressWarnings("serial")
+    private class SetTask extends RecursiveTask<Node> {
+        private final SetOperation op;
+        private final Node t1;
+        private final Node t2;
+
+        SetTask(SetOperation op, Node t1, Node t2) {
+            this.op = op;
+            this.t1 = t1;
+            this.t2 = t2;
+        }
+
+        @Override
+        protected Node compute() {
+            return apply(op, t1, t2);
+        }
+    }
+
+    private Node apply(SetOperation op, Node t1, Node t2) {
+        if (t1 == null) {
+            return op == SetOperation.UNION ? t2 : null;
+        }
+        if (t2 == null) {
+            return op == SetOperation.INTERSECTION ? null : t1;
+        }
+        final boolean parallel = t1.count + t2.count >= PARALLEL_THRESHOLD;
+        Pieces pieces = new Pieces();
+        Node pivot;
+        Node left1;
+        Node right1;
+        Node left2;
+        Node right2;
+        if (op == SetOperation.DIFFERENCE) {
+            //вычитаемое дерево режет уменьшаемое своим корнем
+            pivot = t2;
+            split(t1, t2.data, pieces);
+            left1 = pieces.left;
+            right1 = pieces.right;
+            left2 = t2.left;
+            right2 = t2.right;
+        } else {
+            pivot = t1;
+            split(t2, t1.data, pieces);
+            left1 = t1.left;
+            right1 = t1.right;
+            left2 = pieces.left;
+            right2 = pieces.right;
+        }
+        Node left;
+        Node right;
+        if (parallel) {
+            SetTask task = new SetTask(op, right1, right2);
+            task.fork();
+            left = apply(op, left1, left2);
+            right = task.join();
+        } else {
+            left = apply(op, left1, left2);
+            right = apply(op, right1, right2);
+        }
+        if (op == SetOperation.UNION || op == SetOperation.INTERSECTION && pieces.middle != null) {
+            return join(left, pivot, right);
+        }
+        return join2(left, right);
+    }
+
+    /**
+     * Joins the subtrees around the pivot node, descending the spine of the
+     * higher one to a subtree of about the height of the lower one.
+     */
+    private Node join(Node left, Node pivot, Node right) {
+        final int hl = left != null ? left.height : 0;
+        final int hr = right != null ? right.height : 0;
+        if (hl > hr + 1) {
+            left.right = join(left.right, pivot, right);
+            return balance(left);
+        }
+        if (hr > hl + 1) {
+            right.left = join(left, pivot, right.left);
+            return balance(right);
+        }
+        pivot.left = left;
+        pivot.right = right;
+        pivot.fixHeight();
+        return pivot;
+    }
+
+    /**
+     * Joins the subtrees without a pivot, taking the greatest node of the left one instead.
+     */
+    private Node join2(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        Pieces pieces = new Pieces();
+        splitLast(left, pieces);
+        return join(pieces.left, pieces.middle, right);
+    }
+
+    /**
+     * Splits the subtree into its greatest node and the rest of it.
+     */
+    private void splitLast(Node elem, Pieces pieces) {
+        if (elem.right == null) {
+            pieces.left = elem.left;
+            pieces.middle = elem;
+            return;
+        }
+        splitLast(elem.right, pieces);
+        pieces.left = join(elem.left, elem, pieces.left);
+    }
+
+    private void split(Node elem, E key, Pieces pieces) {
+        if (elem == null) {
+            pieces.left = null;
+            pieces.middle = null;
+            pieces.right = null;
+            return;
+        }
+        final int cmp = compare(key, elem.data);
+        if (cmp < 0) {
+            final Node right = elem.right;
+            split(elem.left, key, pieces);
+            pieces.right = join(pieces.right, elem, right);
+        } else if (cmp > 0) {
+            final Node left = elem.left;
+            split(elem.right, key, pieces);
+            pieces.left = join(left, elem, pieces.left);
+        } else {
+            pieces.left = elem.left;
+            pieces.middle = elem;
+            pieces.right = elem.right;
+        }
+    }
+
+    @Override
+    public E floor(E value) {
+        Node node = lowerNode(value, true);
+        return node != null ? node.data : null;
+    }
+
+    @Override
+    public E ceiling(E value) {
+        Node node = higherNode(value, true);
+        return node != null ? node.data : null;
+    }
+
+    @Override
+    public E higher(E value) {
+        Node node = higherNode(value, false);
+        return node != null ? node.data : null;
+    }
+
+    @Override
+    public E lower(E value) {
+        Node node = lowerNode(value, false);
+        return node != null ? node.data : null;
+    }
+
+    @Override
+    public E pollFirst() {
+        if (isEmpty()) {
+            return null;
+        }
+        E first = first();
+        remove(first);
+        return first;
+    }
+
+    @Override
+    public E pollLast() {
+        if (isEmpty()) {
+            return null;
+        }
+        E last = last();
+        remove(last);
+        return last;
+    }
+
+    @Override
+    public INavigableSet<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (compare(from, to) > 0) {
+            throw new IllegalArgumentException("from > to");
+        }
+        return new View(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public INavigableSet<E> headSet(E to, boolean inclusive) {
+        if (to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(null, false, to, inclusive);
+    }
+
+    @Override
+    public INavigableSet<E> tailSet(E from, boolean inclusive) {
+        if (from == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(from, inclusive, null, false);
+    }
+
+    /**
+     * @return the greatest node less than (or equal to) the value, or null if there is none
+     */
+    private Node lowerNode(E value, boolean inclusive) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        Node res = null;
+        Node curr = root;
+        while (curr != null) {
+            int cmp = compare(value, curr.data);
+            if (cmp > 0 || cmp == 0 && inclusive) {
+                res = curr;
+                if (cmp == 0) {
+                    break;
                 }
-                return balance(elem);
+                curr = curr.right;
+            } else {
+                curr = curr.left;
             }
-        }.delete(root, value);
-        if (isRemoved) {
-            size--;
         }
-        return isRemoved;
+        return res;
     }
 
-    private Node findMin(Node elem) {
-        return elem.left != null ? findMin(elem.left) : elem;
+    /**
+     * @return the least node greater than (or equal to) the value, or null if there is none
+     */
+    private Node higherNode(E value, boolean inclusive) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        Node res = null;
+        Node curr = root;
+        while (curr != null) {
+            int cmp = compare(value, curr.data);
+            if (cmp < 0 || cmp == 0 && inclusive) {
+                res = curr;
+                if (cmp == 0) {
+                    break;
+                }
+                curr = curr.left;
+            } else {
+                curr = curr.right;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
     }
-    private Node removeMin(Node elem) {
-        if (elem.left == null) {
-            return elem.right;
+
+    /**
+     * Reports the length of the search path of a lookup.
+     */
+    private boolean probed(int length, boolean found) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(length);
         }
-        elem.left = removeMin(elem.left);
-        return balance(elem);
+        return found;
     }
 
     private int compare(E v1, E v2) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
         return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
     }
 
     private Node leftRotate(Node x) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.rotated();
+        }
         Node y = x.right;
         x.right = y.left;
         y.left = x;
@@ -206,6 +814,9 @@ public class AVLTree<E extends Comparable<E>> implements ISortedSet<E> {
         return y;
     }
     private Node rightRotate(Node y) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.rotated();
+        }
         Node x = y.left;
         y.left = x.right;
         x.right = y;
@@ -230,4 +841,72 @@ public class AVLTree<E extends Comparable<E>> implements ISortedSet<E> {
         }
         return elem;
     }
+
+    private class Itr extends TreeIterator<Node, E> {
+        Itr(boolean descending) {
+            super(root, null, descending);
+        }
+
+        Itr(boolean descending, E from, boolean fromInclusive, E to, boolean toInclusive) {
+            super(root, null, descending, AVLTree.this::compare,
+                    from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        Node left(Node node) {
+            return node.left;
+        }
+
+        @Override
+        Node right(Node node) {
+            return node.right;
+        }
+
+        @Override
+        E value(Node node) {
+            return node.data;
+        }
+    }
+
+    private class Split extends TreeSpliterator<Node, E> {
+        Split(Node root, int size) {
+            super(root, null, comparator, size);
+        }
+
+        @Override
+        Node left(Node node) {
+            return node.left;
+        }
+
+        @Override
+        Node right(Node node) {
+            return node.right;
+        }
+
+        @Override
+        E value(Node node) {
+            return node.data;
+        }
+
+        @Override
+        TreeSpliterator<Node, E> create() {
+            return new Split(null, 0);
+        }
+    }
+
+    private class View extends SubSet<E> {
+        View(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            super(AVLTree.this, comparator, lo, loInclusive, hi, hiInclusive);
+        }
+
+        @Override
+        Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending) {
+            return new Itr(descending, from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        SubSet<E> create(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            return new View(lo, loInclusive, hi, hiInclusive);
+        }
+    }
 }
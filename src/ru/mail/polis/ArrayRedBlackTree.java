@@ -0,0 +1,531 @@
+package ru.mail.polis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * {@link RedBlackTree} over parallel arrays: node {@code i} is {@code keys[i]},
+ * {@code left[i]}, {@code right[i]}, {@code parent[i]} and bit {@code i} of
+ * {@code red}; index 0 is the black nil node. Freed nodes are recycled
+ * through a free list, so a node costs a key reference, three ints and a
+ * bit instead of a 40-byte object.
+ */
+public class ArrayRedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
+
+    private static final int NIL = 0;
+    private static final int MAX_HEIGHT = 64; //высота красно-чёрного дерева не больше 2 * log2(n + 1)
+
+    private final int INITIAL_CAPACITY = 16;
+    private final Comparator<E> comparator;
+    private Object[] keys;
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private long[] red;
+    private int root = NIL;
+    private int size;
+    private int next = 1; //первый ни разу не использованный узел
+    private int free = NIL; //список свободных узлов, связан через left
+    private SetMetrics metrics;
+
+    public ArrayRedBlackTree() {
+        this(null);
+    }
+
+    public ArrayRedBlackTree(Comparator<E> comparator) {
+        this.comparator = comparator;
+        keys = new Object[INITIAL_CAPACITY];
+        left = new int[INITIAL_CAPACITY];
+        right = new int[INITIAL_CAPACITY];
+        parent = new int[INITIAL_CAPACITY];
+        red = new long[words(INITIAL_CAPACITY)];
+    }
+
+    @Override
+    public E first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Tree is empty, no first element");
+        }
+        return key(min(root));
+    }
+
+    @Override
+    public E last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Tree is empty, no last element");
+        }
+        int curr = root;
+        while (right[curr] != NIL) {
+            curr = right[curr];
+        }
+        return key(curr);
+    }
+
+    @Override
+    public List<E> inorderTraverse() {
+        List<E> res = new ArrayList<>(size);
+        for (Iterator<E> it = iterator(); it.hasNext(); ) {
+            res.add(it.next());
+        }
+        return res;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return search(value) != NIL;
+    }
+
+    /**
+     * Descends for a group of keys in lockstep, one level of all the
+     * searches at a time, so the nodes they load are fetched in parallel.
+     */
+    @Override
+    public void containsAll(E[] keys, BitSet out) {
+        final int[] curr = new int[Batch.GROUP]; //NIL - поиск закончен
+        final int[] depth = new int[Batch.GROUP];
+        for (int from = 0; from < keys.length; from += Batch.GROUP) {
+            final int n = Math.min(Batch.GROUP, keys.length - from);
+            int active = 0;
+            for (int i = 0; i < n; i++) {
+                if (keys[from + i] == null) {
+                    throw new NullPointerException("Value is null");
+                }
+                out.clear(from + i);
+                depth[i] = 0;
+                curr[i] = root;
+                if (root != NIL) {
+                    active++;
+                } else if (SetMetrics.ENABLED && metrics != null) {
+                    metrics.probed(0);
+                }
+            }
+            while (active > 0) {
+                for (int i = 0; i < n; i++) {
+                    final int node = curr[i];
+                    if (node == NIL) {
+                        continue;
+                    }
+                    depth[i]++;
+                    final int cmp = compare(keys[from + i], key(node));
+                    final int next = cmp == 0 ? NIL : cmp < 0 ? left[node] : right[node];
+                    if (next == NIL) {
+                        out.set(from + i, cmp == 0);
+                        if (SetMetrics.ENABLED && metrics != null) {
+                            metrics.probed(depth[i]);
+                        }
+                        active--;
+                    }
+                    curr[i] = next;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean addAll(E[] keys) {
+        return Batch.addAll(this, keys);
+    }
+
+    @Override
+    public boolean add(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        int y = NIL;
+        int x = root;
+        int cmp = 0;
+        while (x != NIL) {
+            y = x;
+            cmp = compare(value, key(x));
+            if (cmp == 0) {
+                return false;
+            }
+            x = cmp < 0 ? left[x] : right[x];
+        }
+        final int z = newNode(value);
+        parent[z] = y;
+        if (y == NIL) {
+            root = z;
+        } else if (cmp < 0) {
+            left[y] = z;
+        } else {
+            right[y] = z;
+        }
+        insertFixup(z);
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final int z = search(value);
+        if (z == NIL) {
+            return false;
+        }
+        int y = z;
+        boolean yRed = isRed(y);
+        int x;
+        if (left[z] == NIL) {
+            x = right[z];
+            transplant(z, right[z]);
+        } else if (right[z] == NIL) {
+            x = left[z];
+            transplant(z, left[z]);
+        } else {
+            //на место z встаёт наименьший из больших
+            y = min(right[z]);
+            yRed = isRed(y);
+            x = right[y];
+            if (parent[y] == z) {
+                parent[x] = y;
+            } else {
+                transplant(y, right[y]);
+                right[y] = right[z];
+                parent[right[y]] = y;
+            }
+            transplant(z, y);
+            left[y] = left[z];
+            parent[left[y]] = y;
+            setRed(y, isRed(z));
+        }
+        if (!yRed) {
+            removeFixup(x);
+        }
+        freeNode(z);
+        size--;
+        return true;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new Itr(true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliterator(iterator(), size,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL
+                        | (comparator == null ? Spliterator.SORTED : 0));
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return new EytzingerSet<>(this, comparator);
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private int search(E value) {
+        int curr = root;
+        int depth = 0;
+        while (curr != NIL) {
+            depth++;
+            final int cmp = compare(value, key(curr));
+            if (cmp == 0) {
+                break;
+            }
+            curr = cmp < 0 ? left[curr] : right[curr];
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(depth);
+        }
+        return curr;
+    }
+
+    private int min(int node) {
+        while (left[node] != NIL) {
+            node = left[node];
+        }
+        return node;
+    }
+
+    private void insertFixup(int z) {
+        while (isRed(parent[z])) {
+            final int p = parent[z];
+            final int g = parent[p];
+            if (p == left[g]) {
+                final int y = right[g];
+                if (isRed(y)) {
+                    setRed(p, false);
+                    setRed(y, false);
+                    setRed(g, true);
+                    z = g;
+                } else {
+                    if (z == right[p]) {
+                        z = p;
+                        leftRotate(z);
+                    }
+                    setRed(parent[z], false);
+                    setRed(g, true);
+                    rightRotate(g);
+                }
+            } else {
+                final int y = left[g];
+                if (isRed(y)) {
+                    setRed(p, false);
+                    setRed(y, false);
+                    setRed(g, true);
+                    z = g;
+                } else {
+                    if (z == left[p]) {
+                        z = p;
+                        rightRotate(z);
+                    }
+                    setRed(parent[z], false);
+                    setRed(g, true);
+                    leftRotate(g);
+                }
+            }
+        }
+        setRed(root, false);
+    }
+
+    private void removeFixup(int x) {
+        while (x != root && !isRed(x)) {
+            if (x == left[parent[x]]) {
+                int w = right[parent[x]];
+                if (isRed(w)) {
+                    setRed(w, false);
+                    setRed(parent[x], true);
+                    leftRotate(parent[x]);
+                    w = right[parent[x]];
+                }
+                if (!isRed(left[w]) && !isRed(right[w])) {
+                    setRed(w, true);
+                    x = parent[x];
+                } else {
+                    if (!isRed(right[w])) {
+                        setRed(left[w], false);
+                        setRed(w, true);
+                        rightRotate(w);
+                        w = right[parent[x]];
+                    }
+                    setRed(w, isRed(parent[x]));
+                    setRed(parent[x], false);
+                    setRed(right[w], false);
+                    leftRotate(parent[x]);
+                    x = root;
+                }
+            } else {
+                int w = left[parent[x]];
+                if (isRed(w)) {
+                    setRed(w, false);
+                    setRed(parent[x], true);
+                    rightRotate(parent[x]);
+                    w = left[parent[x]];
+                }
+                if (!isRed(right[w]) && !isRed(left[w])) {
+                    setRed(w, true);
+                    x = parent[x];
+                } else {
+                    if (!isRed(left[w])) {
+                        setRed(right[w], false);
+                        setRed(w, true);
+                        leftRotate(w);
+                        w = left[parent[x]];
+                    }
+                    setRed(w, isRed(parent[x]));
+                    setRed(parent[x], false);
+                    setRed(left[w], false);
+                    rightRotate(parent[x]);
+                    x = root;
+                }
+            }
+        }
+        setRed(x, false);
+    }
+
+    private void leftRotate(int x) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.rotated();
+        }
+        final int y = right[x];
+        right[x] = left[y];
+        if (left[y] != NIL) {
+            parent[left[y]] = x;
+        }
+        transplant(x, y);
+        left[y] = x;
+        parent[x] = y;
+    }
+
+    private void rightRotate(int y) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.rotated();
+        }
+        final int x = left[y];
+        left[y] = right[x];
+        if (right[x] != NIL) {
+            parent[right[x]] = y;
+        }
+        transplant(y, x);
+        right[x] = y;
+        parent[y] = x;
+    }
+
+    /**
+     * Puts {@code v} in place of {@code u} under the parent of {@code u}.
+     */
+    private void transplant(int u, int v) {
+        final int p = parent[u];
+        if (p == NIL) {
+            root = v;
+        } else if (u == left[p]) {
+            left[p] = v;
+        } else {
+            right[p] = v;
+        }
+        parent[v] = p;
+    }
+
+    private boolean isRed(int node) {
+        return (red[node >>> 6] & (1L << node)) != 0;
+    }
+
+    private void setRed(int node, boolean isRed) {
+        if (isRed) {
+            red[node >>> 6] |= 1L << node;
+        } else {
+            red[node >>> 6] &= ~(1L << node);
+        }
+    }
+
+    private int newNode(E value) {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = left[node];
+        } else {
+            if (next == keys.length) {
+                grow();
+            }
+            node = next++;
+        }
+        keys[node] = value;
+        left[node] = NIL;
+        right[node] = NIL;
+        setRed(node, true);
+        return node;
+    }
+
+    private void freeNode(int node) {
+        keys[node] = null;
+        left[node] = free;
+        right[node] = NIL;
+        parent[node] = NIL;
+        setRed(node, false);
+        free = node;
+    }
+
+    /**
+     * Shrinks the arrays to the nodes in use, e.g. after the tree is loaded.
+     * Nodes freed since then stay allocated for reuse.
+     */
+    public void trimToSize() {
+        resize(Math.max(next, 2));
+    }
+
+    /**
+     * Grows by a quarter rather than doubling: 12 bytes of links per slot make
+     * the unused tail of the arrays costly.
+     */
+    private void grow() {
+        resize(keys.length + Math.max(keys.length >> 2, INITIAL_CAPACITY));
+    }
+
+    private void resize(int capacity) {
+        final long start = SetMetrics.ENABLED ? System.nanoTime() : 0;
+        final int oldCapacity = keys.length;
+        keys = Arrays.copyOf(keys, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        red = Arrays.copyOf(red, words(capacity));
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.resized(oldCapacity, capacity, System.nanoTime() - start);
+        }
+    }
+
+    private static int words(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E key(int node) {
+        return (E) keys[node];
+    }
+
+    private int compare(E v1, E v2) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    /**
+     * In-order iterator keeping the unvisited ancestors on an int stack.
+     */
+    private class Itr implements Iterator<E> {
+        private final boolean descending;
+        private final int[] stack = new int[MAX_HEIGHT];
+        private int depth;
+
+        Itr(boolean descending) {
+            this.descending = descending;
+            pushSpine(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public E next() {
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            final int node = stack[--depth];
+            pushSpine(descending ? left[node] : right[node]);
+            return key(node);
+        }
+
+        private void pushSpine(int node) {
+            while (node != NIL) {
+                stack[depth++] = node;
+                node = descending ? right[node] : left[node];
+            }
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package ru.mail.polis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * B+-tree: the elements are kept sorted in contiguous arrays of leaves
+ * linked both ways, inner nodes hold only separators. Every node but the
+ * root holds from {@code fanout / 2} to {@code fanout} keys, so a lookup
+ * touches O(log n / log fanout) nodes and binary searches each of them in
+ * a few cache lines instead of chasing a pointer per level. With compressed
+ * references a cache line holds 16 keys; the default fan-out of 64 makes a
+ * node's key array span 4 lines.
+ */
+public class BTree<E extends Comparable<E>> implements ISortedSet<E> {
+
+    private static final int DEFAULT_FANOUT = 64;
+    private static final int MIN_FANOUT = 4;
+
+    class Node {
+        final Object[] keys;
+        int n;
+
+        Node(int capacity) {
+            keys = new Object[capacity];
+        }
+
+        @SuppressWarnings("unchecked")
+        E key(int i) {
+            return (E) keys[i];
+        }
+    }
+
+    class Leaf extends Node {
+        Leaf prev;
+        Leaf next;
+
+        Leaf() {
+            super(fanout);
+        }
+    }
+
+    /**
+     * Separator {@code keys[i]} is greater than every key under
+     * {@code children[i]} and not greater than any key under {@code children[i + 1]}.
+     */
+    class Inner extends Node {
+        final Node[] children;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Inner() {
+            super(fanout);
+            children = (Node[]) new BTree.Node[fanout + 1];
+        }
+    }
+
+    private final int fanout;
+    private final int minKeys;
+    private final Comparator<E> comparator;
+    private Node root;
+    private int size;
+    private SetMetrics metrics;
+    /**
+     * Right half of the node split by the last {@link #insert}, null if there was no split.
+     */
+    private Node splitNode;
+    /**
+     * Least key under {@link #splitNode}, to be inserted into the parent.
+     */
+    private E splitKey;
+
+    public BTree() {
+        this(DEFAULT_FANOUT, null);
+    }
+
+    public BTree(Comparator<E> comparator) {
+        this(DEFAULT_FANOUT, comparator);
+    }
+
+    /**
+     * @param fanout maximum number of keys in a node
+     */
+    public BTree(int fanout, Comparator<E> comparator) {
+        if (fanout < MIN_FANOUT) {
+            throw new IllegalArgumentException("Fan-out is less than " + MIN_FANOUT + ": " + fanout);
+        }
+        this.fanout = fanout;
+        this.minKeys = fanout / 2;
+        this.comparator = comparator;
+        this.root = new Leaf();
+    }
+
+    @Override
+    public E first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Tree is empty, no first element");
+        }
+        Node curr = root;
+        while (curr instanceof BTree.Inner) {
+            curr = ((Inner) curr).children[0];
+        }
+        return curr.key(0);
+    }
+
+    @Override
+    public E last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Tree is empty, no last element");
+        }
+        Node curr = root;
+        while (curr instanceof BTree.Inner) {
+            curr = ((Inner) curr).children[curr.n];
+        }
+        return curr.key(curr.n - 1);
+    }
+
+    @Override
+    public List<E> inorderTraverse() {
+        List<E> res = new ArrayList<>(size);
+        for (Leaf leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.n; i++) {
+                res.add(leaf.key(i));
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        Node curr = root;
+        int depth = 1;
+        while (curr instanceof BTree.Inner) {
+            curr = ((Inner) curr).children[childIndex(curr, value)];
+            depth++;
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(depth);
+        }
+        return search(curr, value) >= 0;
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean add(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (!insert(root, value)) {
+            return false;
+        }
+        if (splitNode != null) {
+            //корень разделился, дерево растёт вверх
+            Inner newRoot = new Inner();
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = root;
+            newRoot.children[1] = splitNode;
+            newRoot.n = 1;
+            root = newRoot;
+            splitNode = null;
+            splitKey = null;
+        }
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (!delete(root, value)) {
+            return false;
+        }
+        if (root instanceof BTree.Inner && root.n == 0) {
+            root = ((Inner) root).children[0];
+        }
+        size--;
+        return true;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new Itr(true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliterator(iterator(), size,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL
+                        | (comparator == null ? Spliterator.SORTED : 0));
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return new EytzingerSet<>(this, comparator);
+    }
+
+    /**
+     * Inserts the value into the subtree; if the node overflows, splits it
+     * and leaves the right half in {@link #splitNode}.
+     *
+     * @return false if the value is already there
+     */
+    private boolean insert(Node node, E value) {
+        if (node instanceof BTree.Leaf) {
+            int pos = search(node, value);
+            if (pos >= 0) {
+                return false;
+            }
+            pos = -(pos + 1);
+            if (node.n < fanout) {
+                insertKey(node, pos, value);
+                return true;
+            }
+            Leaf left = (Leaf) node;
+            Leaf right = new Leaf();
+            final int half = (fanout + 1) / 2; //ключей в левой половине после вставки
+            if (pos < half) {
+                moveKeys(left, half - 1, right, 0, fanout - half + 1);
+                left.n = half - 1;
+                right.n = fanout - half + 1;
+                insertKey(left, pos, value);
+            } else {
+                moveKeys(left, half, right, 0, fanout - half);
+                left.n = half;
+                right.n = fanout - half;
+                insertKey(right, pos - half, value);
+            }
+            right.next = left.next;
+            right.prev = left;
+            if (left.next != null) {
+                left.next.prev = right;
+            }
+            left.next = right;
+            splitNode = right;
+            splitKey = right.key(0);
+            return true;
+        }
+        Inner inner = (Inner) node;
+        final int idx = childIndex(inner, value);
+        if (!insert(inner.children[idx], value)) {
+            return false;
+        }
+        if (splitNode == null) {
+            return true;
+        }
+        final Node child = splitNode;
+        final E key = splitKey;
+        if (inner.n < fanout) {
+            insertChild(inner, idx + 1, child);
+            insertKey(inner, idx, key);
+            splitNode = null;
+            splitKey = null;
+            return true;
+        }
+        //переполнен: вставляем во временные массивы на один больше и делим пополам
+        final Object[] keys = new Object[fanout + 1];
+        final Object[] children = new Object[fanout + 2];
+        System.arraycopy(inner.keys, 0, keys, 0, idx);
+        keys[idx] = key;
+        System.arraycopy(inner.keys, idx, keys, idx + 1, fanout - idx);
+        System.arraycopy(inner.children, 0, children, 0, idx + 1);
+        children[idx + 1] = child;
+        System.arraycopy(inner.children, idx + 1, children, idx + 2, fanout - idx);
+        final int mid = (fanout + 1) / 2;
+        Inner right = new Inner();
+        System.arraycopy(keys, 0, inner.keys, 0, mid);
+        System.arraycopy(children, 0, inner.children, 0, mid + 1);
+        Arrays.fill(inner.keys, mid, fanout, null);
+        Arrays.fill(inner.children, mid + 1, fanout + 1, null);
+        inner.n = mid;
+        System.arraycopy(keys, mid + 1, right.keys, 0, fanout - mid);
+        System.arraycopy(children, mid + 1, right.children, 0, fanout - mid + 1);
+        right.n = fanout - mid;
+        splitNode = right;
+        splitKey = keyOf(keys[mid]);
+        return true;
+    }
+
+    /**
+     * Removes the value from the subtree and restores the minimum occupancy
+     * of the child it was removed from by borrowing from or merging with a sibling.
+     *
+     * @return false if there is no such value
+     */
+    private boolean delete(Node node, E value) {
+        if (node instanceof BTree.Leaf) {
+            final int pos = search(node, value);
+            if (pos < 0) {
+                return false;
+            }
+            removeKey(node, pos);
+            return true;
+        }
+        Inner inner = (Inner) node;
+        final int idx = childIndex(inner, value);
+        final Node child = inner.children[idx];
+        if (!delete(child, value)) {
+            return false;
+        }
+        if (child.n < minKeys) {
+            fixUnderflow(inner, idx);
+        }
+        return true;
+    }
+
+    private void fixUnderflow(Inner parent, int idx) {
+        final Node child = parent.children[idx];
+        final Node left = idx > 0 ? parent.children[idx - 1] : null;
+        final Node right = idx < parent.n ? parent.children[idx + 1] : null;
+        if (left != null && left.n > minKeys) {
+            if (child instanceof BTree.Leaf) {
+                insertKey(child, 0, left.key(left.n - 1));
+                removeKey(left, left.n - 1);
+                parent.keys[idx - 1] = child.keys[0];
+            } else {
+                final Inner c = (Inner) child;
+                final Inner l = (Inner) left;
+                insertChild(c, 0, l.children[l.n]);
+                insertKey(c, 0, parent.key(idx - 1));
+                parent.keys[idx - 1] = l.keys[l.n - 1];
+                l.children[l.n] = null;
+                removeKey(l, l.n - 1);
+            }
+        } else if (right != null && right.n > minKeys) {
+            if (child instanceof BTree.Leaf) {
+                insertKey(child, child.n, right.key(0));
+                removeKey(right, 0);
+                parent.keys[idx] = right.keys[0];
+            } else {
+                final Inner c = (Inner) child;
+                final Inner r = (Inner) right;
+                insertKey(c, c.n, parent.key(idx));
+                c.children[c.n] = r.children[0];
+                parent.keys[idx] = r.keys[0];
+                removeChild(r, 0);
+                removeKey(r, 0);
+            }
+        } else if (left != null) {
+            merge(parent, idx - 1);
+        } else {
+            merge(parent, idx);
+        }
+    }
+
+    /**
+     * Merges {@code children[idx + 1]} into {@code children[idx]} and removes the separator between them.
+     */
+    private void merge(Inner parent, int idx) {
+        final Node left = parent.children[idx];
+        final Node right = parent.children[idx + 1];
+        if (left instanceof BTree.Leaf) {
+            moveKeys(right, 0, left, left.n, right.n);
+            left.n += right.n;
+            final Leaf l = (Leaf) left;
+            final Leaf r = (Leaf) right;
+            l.next = r.next;
+            if (r.next != null) {
+                r.next.prev = l;
+            }
+        } else {
+            final Inner l = (Inner) left;
+            final Inner r = (Inner) right;
+            l.keys[l.n] = parent.keys[idx];
+            System.arraycopy(r.keys, 0, l.keys, l.n + 1, r.n);
+            System.arraycopy(r.children, 0, l.children, l.n + 1, r.n + 1);
+            l.n += r.n + 1;
+        }
+        removeChild(parent, idx + 1);
+        removeKey(parent, idx);
+    }
+
+    private void insertKey(Node node, int pos, E key) {
+        System.arraycopy(node.keys, pos, node.keys, pos + 1, node.n - pos);
+        node.keys[pos] = key;
+        node.n++;
+    }
+
+    private void removeKey(Node node, int pos) {
+        System.arraycopy(node.keys, pos + 1, node.keys, pos, node.n - pos - 1);
+        node.keys[--node.n] = null;
+    }
+
+    /**
+     * Call before {@link #insertKey} into the same node, when {@code n} is the old number of keys.
+     */
+    private void insertChild(Inner node, int pos, Node child) {
+        System.arraycopy(node.children, pos, node.children, pos + 1, node.n + 1 - pos);
+        node.children[pos] = child;
+    }
+
+    /**
+     * Call before {@link #removeKey} from the same node, when {@code n} is the old number of keys.
+     */
+    private void removeChild(Inner node, int pos) {
+        System.arraycopy(node.children, pos + 1, node.children, pos, node.n - pos);
+        node.children[node.n] = null;
+    }
+
+    private void moveKeys(Node from, int fromPos, Node to, int toPos, int count) {
+        System.arraycopy(from.keys, fromPos, to.keys, toPos, count);
+        Arrays.fill(from.keys, fromPos, fromPos + count, null);
+    }
+
+    /**
+     * @return index of the key in the node, or (-(insertion point) - 1) as
+     * {@link java.util.Arrays#binarySearch(Object[], Object)} does
+     */
+    private int search(Node node, E key) {
+        final Object[] keys = node.keys;
+        int lo = 0;
+        int hi = node.n - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = compare(keyOf(keys[mid]), key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * @return index of the child of an inner node whose subtree may hold the key
+     */
+    private int childIndex(Node node, E key) {
+        final int pos = search(node, key);
+        return pos >= 0 ? pos + 1 : -(pos + 1);
+    }
+
+    private Leaf firstLeaf() {
+        Node curr = root;
+        while (curr instanceof BTree.Inner) {
+            curr = ((Inner) curr).children[0];
+        }
+        return (Leaf) curr;
+    }
+
+    private Leaf lastLeaf() {
+        Node curr = root;
+        while (curr instanceof BTree.Inner) {
+            curr = ((Inner) curr).children[curr.n];
+        }
+        return (Leaf) curr;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E keyOf(Object key) {
+        return (E) key;
+    }
+
+    private int compare(E v1, E v2) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    /**
+     * Walks the linked leaves.
+     */
+    private class Itr implements Iterator<E> {
+        private final boolean descending;
+        private Leaf leaf;
+        private int index;
+
+        Itr(boolean descending) {
+            this.descending = descending;
+            this.leaf = descending ? lastLeaf() : firstLeaf();
+            this.index = descending ? leaf.n - 1 : 0;
+            if (leaf.n == 0) {
+                leaf = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return leaf != null;
+        }
+
+        @Override
+        public E next() {
+            if (leaf == null) {
+                throw new NoSuchElementException();
+            }
+            final E res = leaf.key(index);
+            if (descending) {
+                if (--index < 0) {
+                    leaf = leaf.prev;
+                    index = leaf != null ? leaf.n - 1 : 0;
+                }
+            } else if (++index == leaf.n) {
+                leaf = leaf.next;
+                index = 0;
+            }
+            return res;
+        }
+    }
+}
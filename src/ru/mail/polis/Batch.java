@@ -0,0 +1,32 @@
+package ru.mail.polis;
+
+import java.util.BitSet;
+
+/**
+ * Helpers of the batched operations {@link ISet#containsAll} and {@link ISet#addAll}.
+ */
+final class Batch {
+
+    /**
+     * Number of lookups in flight: about the number of outstanding cache
+     * misses a core can track, while the state of a group stays in L1.
+     */
+    static final int GROUP = 16;
+
+    private Batch() {
+    }
+
+    /**
+     * Adds the values that a batched lookup has not found.
+     */
+    static <E extends Comparable<E>> boolean addAll(ISet<E> set, E[] keys) {
+        final BitSet present = new BitSet(keys.length);
+        set.containsAll(keys, present);
+        boolean changed = false;
+        //повторы внутри пакета отсеет сам add
+        for (int i = present.nextClearBit(0); i < keys.length; i = present.nextClearBit(i + 1)) {
+            changed |= set.add(keys[i]);
+        }
+        return changed;
+    }
+}
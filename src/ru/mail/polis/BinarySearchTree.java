@@ -2,11 +2,13 @@ package ru.mail.polis;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.Spliterator;
 
-public class BinarySearchTree<E extends Comparable<E>> implements ISortedSet<E> {
+public class BinarySearchTree<E extends Comparable<E>> implements INavigableSet<E> {
 
     class Node {
 
@@ -35,6 +37,7 @@ public class BinarySearchTree<E extends Comparable<E>> implements ISortedSet<E>
 
     private Node root;
     private int size;
+    private SetMetrics metrics;
     private final Comparator<E> comparator;
 
     public BinarySearchTree() {
@@ -84,12 +87,14 @@ public class BinarySearchTree<E extends Comparable<E>> implements ISortedSet<E>
         if (value == null) {
             throw new NullPointerException("value is null");
         }
+        int depth = 0;
         if (root != null) {
             Node curr = root;
             while (curr != null) {
+                depth++;
                 int cmp = compare(curr.value, value);
                 if (cmp == 0) {
-                    return true;
+                    return probed(depth, true);
                 } else if (cmp < 0) {
                     curr = curr.right;
                 } else {
@@ -97,7 +102,7 @@ public class BinarySearchTree<E extends Comparable<E>> implements ISortedSet<E>
                 }
             }
         }
-        return false;
+        return probed(depth, false);
     }
 
     @Override
@@ -196,24 +201,227 @@ public class BinarySearchTree<E extends Comparable<E>> implements ISortedSet<E>
         curr.value = null;
     }
 
+    public static <E extends Comparable<E>> BinarySearchTree<E> fromSorted(Iterator<? extends E> sorted, int size) {
+        return fromSorted(sorted, size, null);
+    }
+
+    /**
+     * Builds a perfectly balanced tree in O(size).
+     *
+     * @param sorted iterator over the elements in strictly ascending order
+     * @param size   number of elements to take from the iterator
+     * @throws IllegalArgumentException if the elements are not strictly ascending
+     */
+    public static <E extends Comparable<E>> BinarySearchTree<E> fromSorted(Iterator<? extends E> sorted, int size,
+                                                                           Comparator<E> comparator) {
+        BinarySearchTree<E> tree = new BinarySearchTree<>(comparator);
+        tree.addAllSorted(sorted, size);
+        return tree;
+    }
+
+    /**
+     * Small batches are added one by one, larger ones are merged with the
+     * nodes by {@link TreeIterator#merge}, and the tree is rebuilt perfectly
+     * balanced in O(n + size).
+     */
+    @Override
+    public boolean addAllSorted(Iterator<? extends E> sorted, int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size is negative: " + size);
+        }
+        if ((long) size * (32 - Integer.numberOfLeadingZeros(this.size)) < this.size) {
+            return INavigableSet.super.addAllSorted(sorted, size);
+        }
+        final Object[] nodes = new Itr(false).merge(this.size, sorted, size, Node::new, this::compare);
+        root = build(nodes, 0, nodes.length);
+        final boolean changed = nodes.length != this.size;
+        this.size = nodes.length;
+        return changed;
+    }
+
+    /**
+     * @return root of a perfectly balanced tree of nodes[lo, hi), which are in order
+     */
+    @SuppressWarnings("unchecked")
+    private Node build(Object[] nodes, int lo, int hi) {
+        if (lo >= hi) {
+            return null;
+        }
+        final int mid = (lo + hi) >>> 1;
+        Node curr = (Node) nodes[mid];
+        curr.left = build(nodes, lo, mid);
+        curr.right = build(nodes, mid + 1, hi);
+        return curr;
+    }
+
+    @Override
+    public E floor(E value) {
+        Node node = lowerNode(value, true);
+        return node != null ? node.value : null;
+    }
+
+    @Override
+    public E ceiling(E value) {
+        Node node = higherNode(value, true);
+        return node != null ? node.value : null;
+    }
+
+    @Override
+    public E higher(E value) {
+        Node node = higherNode(value, false);
+        return node != null ? node.value : null;
+    }
+
+    @Override
+    public E lower(E value) {
+        Node node = lowerNode(value, false);
+        return node != null ? node.value : null;
+    }
+
+    @Override
+    public E pollFirst() {
+        if (isEmpty()) {
+            return null;
+        }
+        E first = first();
+        remove(first);
+        return first;
+    }
+
+    @Override
+    public E pollLast() {
+        if (isEmpty()) {
+            return null;
+        }
+        E last = last();
+        remove(last);
+        return last;
+    }
+
+    @Override
+    public INavigableSet<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (compare(from, to) > 0) {
+            throw new IllegalArgumentException("from > to");
+        }
+        return new View(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public INavigableSet<E> headSet(E to, boolean inclusive) {
+        if (to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(null, false, to, inclusive);
+    }
+
+    @Override
+    public INavigableSet<E> tailSet(E from, boolean inclusive) {
+        if (from == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(from, inclusive, null, false);
+    }
+
+    /**
+     * @return the greatest node less than (or equal to) the value, or null if there is none
+     */
+    private Node lowerNode(E value, boolean inclusive) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        Node res = null;
+        Node curr = root;
+        while (curr != null) {
+            int cmp = compare(value, curr.value);
+            if (cmp > 0 || cmp == 0 && inclusive) {
+                res = curr;
+                if (cmp == 0) {
+                    break;
+                }
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return the least node greater than (or equal to) the value, or null if there is none
+     */
+    private Node higherNode(E value, boolean inclusive) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        Node res = null;
+        Node curr = root;
+        while (curr != null) {
+            int cmp = compare(value, curr.value);
+            if (cmp < 0 || cmp == 0 && inclusive) {
+                res = curr;
+                if (cmp == 0) {
+                    break;
+                }
+                curr = curr.left;
+            } else {
+                curr = curr.right;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reports the length of the search path of a lookup.
+     */
+    private boolean probed(int length, boolean found) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(length);
+        }
+        return found;
+    }
+
     private int compare(E v1, E v2) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
         return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
     }
 
     @Override
     public List<E> inorderTraverse() {
         List<E> list = new ArrayList<E>(size);
-        inorderTraverse(root, list);
+        for (E value : this) {
+            list.add(value);
+        }
         return list;
     }
 
-    private void inorderTraverse(Node curr, List<E> list) {
-        if (curr == null) {
-            return;
-        }
-        inorderTraverse(curr.left, list);
-        list.add(curr.value);
-        inorderTraverse(curr.right, list);
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new Itr(true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return new Split(root, size);
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return new EytzingerSet<>(this, comparator);
     }
 
     @Override
@@ -221,6 +429,74 @@ public class BinarySearchTree<E extends Comparable<E>> implements ISortedSet<E>
         return "BST{" + root + "}";
     }
 
+    private class Itr extends TreeIterator<Node, E> {
+        Itr(boolean descending) {
+            super(root, null, descending);
+        }
+
+        Itr(boolean descending, E from, boolean fromInclusive, E to, boolean toInclusive) {
+            super(root, null, descending, BinarySearchTree.this::compare,
+                    from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        Node left(Node node) {
+            return node.left;
+        }
+
+        @Override
+        Node right(Node node) {
+            return node.right;
+        }
+
+        @Override
+        E value(Node node) {
+            return node.value;
+        }
+    }
+
+    private class Split extends TreeSpliterator<Node, E> {
+        Split(Node root, int size) {
+            super(root, null, comparator, size);
+        }
+
+        @Override
+        Node left(Node node) {
+            return node.left;
+        }
+
+        @Override
+        Node right(Node node) {
+            return node.right;
+        }
+
+        @Override
+        E value(Node node) {
+            return node.value;
+        }
+
+        @Override
+        TreeSpliterator<Node, E> create() {
+            return new Split(null, 0);
+        }
+    }
+
+    private class View extends SubSet<E> {
+        View(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            super(BinarySearchTree.this, comparator, lo, loInclusive, hi, hiInclusive);
+        }
+
+        @Override
+        Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending) {
+            return new Itr(descending, from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        SubSet<E> create(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            return new View(lo, loInclusive, hi, hiInclusive);
+        }
+    }
+
     public static void main(String[] args) {
         BinarySearchTree<Integer> tree = new BinarySearchTree<>();
         tree.add(10);
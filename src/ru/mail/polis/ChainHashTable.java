@@ -25,16 +25,33 @@ public class ChainHashTable<E extends Comparable<E>> implements ISet<E> {
 
     private final int INITIAL_CAPACITY = 8;
 //    private final float LOAD_FACTOR = 0.5f;
+    private final int MIGRATION_STEP = 4;
+    private final int TREEIFY_THRESHOLD = 8; //цепочка такой длины заменяется деревом
+    private final int UNTREEIFY_THRESHOLD = 6; //дерево такого размера снова становится цепочкой
     private Comparator<E> comparator;
-    private Object[] table;
+    private Object[] table; //бакет - цепочка Node или AVLTree, если в него попало много элементов
+    private Object[] oldTable; //не null, пока идёт постепенное перехеширование
+    private int migrated; //число уже перенесённых бакетов oldTable
+    private final boolean incrementalResize;
     private int size;
+    private SetMetrics metrics;
 
     public ChainHashTable() {
         this(null);
     }
 
     public ChainHashTable(Comparator<E> comparator) {
+        this(comparator, false);
+    }
+
+    /**
+     * @param incrementalResize if true, on resize the old and the new tables are kept
+     *                          side by side and every add/remove migrates a few buckets,
+     *                          instead of rehashing the whole table at once
+     */
+    public ChainHashTable(Comparator<E> comparator, boolean incrementalResize) {
         this.comparator = comparator;
+        this.incrementalResize = incrementalResize;
         this.table = new Object[INITIAL_CAPACITY];
     }
 
@@ -50,28 +67,72 @@ public class ChainHashTable<E extends Comparable<E>> implements ISet<E> {
 
     @Override
     public boolean contains(E value) {
-        Node curr = getNode(hash(value));
-        while (curr != null && !curr.equals(value)) {
-            curr = curr.next;
+        Object[] tab = tableOf(value);
+        return contains(tab[hash(value, tab.length)], value);
+    }
+
+    /**
+     * Looks the keys up in groups: first hashes them all, then loads all
+     * their bins, then the first nodes of the chains, and only then compares.
+     */
+    @Override
+    public void containsAll(E[] keys, BitSet out) {
+        if (oldTable != null) {
+            //пока идёт перехеширование, бакет может быть в любой из таблиц
+            ISet.super.containsAll(keys, out);
+            return;
+        }
+        final Object[] tab = table;
+        final int[] idx = new int[Batch.GROUP];
+        final Object[] bins = new Object[Batch.GROUP];
+        final Object[] heads = new Object[Batch.GROUP]; //только чтобы загрузить первые узлы
+        for (int from = 0; from < keys.length; from += Batch.GROUP) {
+            final int n = Math.min(Batch.GROUP, keys.length - from);
+            for (int i = 0; i < n; i++) {
+                idx[i] = hash(keys[from + i], tab.length);
+            }
+            for (int i = 0; i < n; i++) {
+                bins[i] = tab[idx[i]];
+            }
+            for (int i = 0; i < n; i++) {
+                heads[i] = bins[i] instanceof ChainHashTable.Node ? chainBin(bins[i]).value : null;
+            }
+            for (int i = 0; i < n; i++) {
+                out.set(from + i, contains(bins[i], keys[from + i]));
+            }
         }
-        //Вышли по второму условию
-        return curr != null;
+    }
+
+    @Override
+    public boolean addAll(E[] keys) {
+        return Batch.addAll(this, keys);
     }
 
     @Override
     public boolean add(E value) {
-        int idx = hash(value);
-        if (table[idx] == null) {
-            table[idx] = new Node(value);
+        migrate(MIGRATION_STEP);
+        Object[] tab = tableOf(value);
+        int idx = hash(value, tab.length);
+        if (tab[idx] == null) {
+            tab[idx] = new Node(value);
+        } else if (tab[idx] instanceof AVLTree) {
+            if (!treeBin(tab[idx]).add(value)) {
+                return false;
+            }
         } else {
-            Node curr = getNode(idx);
+            Node curr = getNode(tab, idx);
+            int length = 1;
             while (curr.next != null && compare(value, curr.value) != 0) {
                 curr = curr.next;
+                length++;
             }
             if (compare(value, curr.value) == 0) {
                 return false;
             }
             curr.next = new Node(value);
+            if (length + 1 >= TREEIFY_THRESHOLD) {
+                tab[idx] = treeify(getNode(tab, idx));
+            }
         }
         size++;
         resize();
@@ -80,16 +141,29 @@ public class ChainHashTable<E extends Comparable<E>> implements ISet<E> {
 
     @Override
     public boolean remove(E value) {
+        migrate(MIGRATION_STEP);
         Node prev = null;
-        int index = hash(value);
-        Node curr = getNode(index);
+        Object[] tab = tableOf(value);
+        int index = hash(value, tab.length);
+        if (tab[index] instanceof AVLTree) {
+            AVLTree<E> tree = treeBin(tab[index]);
+            if (!tree.remove(value)) {
+                return false;
+            }
+            if (tree.size() <= UNTREEIFY_THRESHOLD) {
+                tab[index] = untreeify(tree.iterator());
+            }
+            size--;
+            return true;
+        }
+        Node curr = getNode(tab, index);
         while (curr != null && compare(value, curr.value) != 0) {
             prev = curr;
             curr = curr.next;
         }
         if (curr != null) {
             if (prev == null) { //head
-                table[index] = getNode(index).next;
+                tab[index] = curr.next;
             } else {
                 prev.next = curr.next;
             }
@@ -101,48 +175,185 @@ public class ChainHashTable<E extends Comparable<E>> implements ISet<E> {
         return false;
     }
 
-    private int hash(E value) {
-        return Math.abs(value.hashCode()) % table.length;
+    /**
+     * Also attaches the receiver to the tree bins, which report their own lookups.
+     */
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+        for (Object[] tab : new Object[][]{table, oldTable}) {
+            if (tab != null) {
+                for (Object bin : tab) {
+                    if (bin instanceof AVLTree) {
+                        treeBin(bin).setMetrics(metrics);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean contains(Object bin, E value) {
+        if (bin instanceof AVLTree) {
+            return treeBin(bin).contains(value);
+        }
+        Node curr = chainBin(bin);
+        int probes = 0;
+        while (curr != null && compare(value, curr.value) != 0) {
+            curr = curr.next;
+            probes++;
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(curr != null ? probes + 1 : probes);
+        }
+        //Вышли по второму условию
+        return curr != null;
+    }
+
+    /**
+     * Capacity is a power of two, so the index is the low bits of the hash;
+     * the high bits are mixed into them first.
+     */
+    private int hash(E value, int length) {
+        final int h = value.hashCode();
+        return (h ^ (h >>> 16)) & (length - 1);
+    }
+
+    /**
+     * @return the table holding the bucket of the value: during incremental
+     * resize, buckets of the old table that are not migrated yet stay there
+     */
+    private Object[] tableOf(E value) {
+        if (oldTable != null && hash(value, oldTable.length) >= migrated) {
+            return oldTable;
+        }
+        return table;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node getNode(Object[] tab, int index) {
+        return (Node) (tab[index]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node chainBin(Object bin) {
+        return (Node) bin;
     }
 
     @SuppressWarnings("unchecked")
-    private Node getNode(int index) {
-        return (Node) (table[index]);
+    private AVLTree<E> treeBin(Object bin) {
+        return (AVLTree<E>) bin;
+    }
+
+    /**
+     * Replaces a long chain, e.g. of keys with colliding hash codes, by a
+     * tree ordered with {@link #compare}: lookups in the bin become logarithmic.
+     */
+    private AVLTree<E> treeify(Node chain) {
+        AVLTree<E> tree = new AVLTree<>(comparator);
+        tree.setMetrics(metrics);
+        for (Node curr = chain; curr != null; curr = curr.next) {
+            tree.add(curr.value);
+        }
+        return tree;
+    }
+
+    private Node untreeify(Iterator<E> values) {
+        Node head = null;
+        while (values.hasNext()) {
+            Node node = new Node(values.next());
+            node.next = head;
+            head = node;
+        }
+        return head;
     }
 
     private int compare(E v1, E v2) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
         return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
     }
 
-    @SuppressWarnings("unchecked")
     private void resize() {
         if (size * 2 < table.length) {
             return;
         }
-        Object[] old = this.table;
-        size = 0;
+        final long start = SetMetrics.ENABLED ? System.nanoTime() : 0;
+        //предыдущее перехеширование должно закончиться раньше, но на всякий случай
+        migrate(Integer.MAX_VALUE);
+        oldTable = table;
+        migrated = 0;
         table = new Object[table.length << 1];
-        for (int i = 0; i < old.length; i++) {
-            Node node = (Node) old[i];
-            if (node != null) {
-                Node curr = node;
+        if (!incrementalResize) {
+            migrate(Integer.MAX_VALUE);
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.resized(table.length >> 1, table.length, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Moves up to {@code buckets} buckets of the old table into the new one,
+     * relinking existing nodes. New table is twice as large and the resize
+     * starts at half of its threshold, so migrating {@link #MIGRATION_STEP} > 2
+     * buckets per operation always completes before the next resize.
+     */
+    private void migrate(int buckets) {
+        if (oldTable == null) {
+            return;
+        }
+        final int end = (int) Math.min((long) migrated + buckets, oldTable.length);
+        for (; migrated < end; migrated++) {
+            //таблица выросла вдвое, поэтому бакет делится между бакетами migrated и
+            //migrated + oldTable.length новой таблицы, и больше в них ничего не попадает
+            if (oldTable[migrated] instanceof AVLTree) {
+                splitTreeBin(treeBin(oldTable[migrated]), migrated);
+            } else {
+                Node curr = getNode(oldTable, migrated);
                 while (curr != null) {
                     Node next = curr.next;
-                    //FIXME: insert value in head (all unique)
-                    add(curr.value);
-                    curr.next = null;
-                    curr.value = null;
+                    //все элементы уникальны, вставляем в голову
+                    int idx = hash(curr.value, table.length);
+                    curr.next = getNode(table, idx);
+                    table[idx] = curr;
                     curr = next;
                 }
-                old[i] = null;
             }
+            oldTable[migrated] = null;
+        }
+        if (migrated == oldTable.length) {
+            oldTable = null;
+        }
+    }
+
+    /**
+     * Splits a tree bin of the old table, keeping the order of the elements,
+     * so the halves are bulk-loaded in linear time instead of inserted one by
+     * one; the load compares each element only with the previous one, to
+     * check the order.
+     */
+    private void splitTreeBin(AVLTree<E> tree, int index) {
+        List<E> lo = new ArrayList<>();
+        List<E> hi = new ArrayList<>();
+        for (E value : tree) {
+            (hash(value, table.length) == index ? lo : hi).add(value);
+        }
+        table[index] = bin(lo);
+        table[index + oldTable.length] = bin(hi);
+    }
+
+    private Object bin(List<E> sorted) {
+        if (sorted.size() <= UNTREEIFY_THRESHOLD) {
+            return untreeify(sorted.iterator());
         }
+        AVLTree<E> tree = AVLTree.fromSorted(sorted.iterator(), sorted.size(), comparator);
+        tree.setMetrics(metrics);
+        return tree;
     }
 
     private void print() {
         for (int i = 0; i < table.length; i++) {
-            Node curr = getNode(i);
-            System.out.println("idx = " + i + ", " + curr);
+            System.out.println("idx = " + i + ", " + table[i]);
         }
         System.out.println("-------------------------");
     }
@@ -0,0 +1,407 @@
+package ru.mail.polis;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Comparator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe {@link ChainHashTable}. Readers walk bins without locking,
+ * writers lock the head node of a single bin. Resizing is cooperative: the
+ * old table is split into strides which every writer that runs into a
+ * forwarding node claims and migrates, in the manner of
+ * {@link java.util.concurrent.ConcurrentHashMap}.
+ */
+public class ConcurrentChainHashTable<E extends Comparable<E>> implements ISet<E> {
+    static class Node<E> {
+        final int hash;
+        final E value;
+        volatile Node<E> next;
+
+        Node(int hash, E value, Node<E> next) {
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Head of a bin that has already been moved to {@link #nextTable}.
+     */
+    static final class ForwardingNode<E> extends Node<E> {
+        final Node<E>[] nextTable;
+
+        ForwardingNode(Node<E>[] nextTable) {
+            super(MOVED, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+
+    private static final int MOVED = -1;
+    private static final int HASH_BITS = 0x7fffffff;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final int MIN_TRANSFER_STRIDE = 16;
+    private static final int RESIZE_STAMP_SHIFT = 16;
+    private static final int MAX_RESIZERS = (1 << (32 - RESIZE_STAMP_SHIFT)) - 1;
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private static final VarHandle BIN;
+    private static final VarHandle SIZE_CTL;
+    private static final VarHandle TRANSFER_INDEX;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            BIN = MethodHandles.arrayElementVarHandle(Node[].class);
+            SIZE_CTL = lookup.findVarHandle(ConcurrentChainHashTable.class, "sizeCtl", int.class);
+            TRANSFER_INDEX = lookup.findVarHandle(ConcurrentChainHashTable.class, "transferIndex", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int INITIAL_CAPACITY = 8;
+    private final Comparator<E> comparator;
+    private final LongAdder count = new LongAdder();
+    private volatile Node<E>[] table;
+    private volatile Node<E>[] nextTable;
+    /**
+     * Size threshold for the next resize; while resizing, the resize stamp of
+     * the current capacity in the upper 16 bits and 1 + number of active
+     * resizers in the lower ones.
+     */
+    private volatile int sizeCtl;
+    /**
+     * Bins of {@link #table} below this index are not yet claimed by a resizer.
+     */
+    private volatile int transferIndex;
+    private volatile long resizeStart; //момент, когда первый поток начал перенос
+    private volatile SetMetrics metrics;
+
+    public ConcurrentChainHashTable() {
+        this(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentChainHashTable(Comparator<E> comparator) {
+        this.comparator = comparator;
+        this.table = (Node<E>[]) new Node<?>[INITIAL_CAPACITY];
+        this.sizeCtl = INITIAL_CAPACITY >>> 1;
+    }
+
+    @Override
+    public int size() {
+        long n = count.sum();
+        return n < 0 ? 0 : n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count.sum() <= 0;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final int h = spread(value.hashCode());
+        Node<E>[] tab = table;
+        Node<E> e = tabAt(tab, (tab.length - 1) & h);
+        int probes = 0;
+        while (e != null) {
+            if (e.hash == MOVED) {
+                //бин уже перенесён, ищем в новой таблице
+                tab = ((ForwardingNode<E>) e).nextTable;
+                e = tabAt(tab, (tab.length - 1) & h);
+            } else {
+                probes++;
+                if (e.hash == h && compare(value, e.value) == 0) {
+                    return probed(probes, true);
+                }
+                e = e.next;
+            }
+        }
+        return probed(probes, false);
+    }
+
+    @Override
+    public boolean add(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final int h = spread(value.hashCode());
+        for (Node<E>[] tab = table; ; ) {
+            final int i = (tab.length - 1) & h;
+            Node<E> f = tabAt(tab, i);
+            if (f == null) {
+                if (casTabAt(tab, i, null, new Node<>(h, value, null))) {
+                    break;
+                }
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(tab, (ForwardingNode<E>) f);
+            } else {
+                boolean locked = false;
+                boolean added = false;
+                synchronized (f) {
+                    if (tabAt(tab, i) == f) {
+                        locked = true;
+                        Node<E> e = f;
+                        while (!(e.hash == h && compare(value, e.value) == 0)) {
+                            if (e.next == null) {
+                                e.next = new Node<>(h, value, null);
+                                added = true;
+                                break;
+                            }
+                            e = e.next;
+                        }
+                    }
+                }
+                if (locked) {
+                    if (!added) {
+                        return false;
+                    }
+                    break;
+                }
+            }
+        }
+        addCount(1);
+        return true;
+    }
+
+    @Override
+    public boolean remove(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final int h = spread(value.hashCode());
+        for (Node<E>[] tab = table; ; ) {
+            final int i = (tab.length - 1) & h;
+            Node<E> f = tabAt(tab, i);
+            if (f == null) {
+                return false;
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(tab, (ForwardingNode<E>) f);
+            } else {
+                boolean locked = false;
+                boolean removed = false;
+                synchronized (f) {
+                    if (tabAt(tab, i) == f) {
+                        locked = true;
+                        Node<E> prev = null;
+                        for (Node<E> e = f; e != null; prev = e, e = e.next) {
+                            if (e.hash == h && compare(value, e.value) == 0) {
+                                if (prev == null) { //head
+                                    setTabAt(tab, i, e.next);
+                                } else {
+                                    prev.next = e.next;
+                                }
+                                removed = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (locked) {
+                    if (removed) {
+                        addCount(-1);
+                    }
+                    return removed;
+                }
+            }
+        }
+    }
+
+    /**
+     * The receiver must be thread-safe: lookups and resizes report concurrently.
+     */
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reports the number of chain nodes a lookup inspected.
+     */
+    private boolean probed(int length, boolean found) {
+        final SetMetrics metrics = this.metrics;
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(length);
+        }
+        return found;
+    }
+
+    private int compare(E v1, E v2) {
+        final SetMetrics metrics = this.metrics;
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) & HASH_BITS;
+    }
+
+    private static int resizeStamp(int n) {
+        return Integer.numberOfLeadingZeros(n) | (1 << (RESIZE_STAMP_SHIFT - 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Node<E> tabAt(Node<E>[] tab, int i) {
+        return (Node<E>) BIN.getAcquire(tab, i);
+    }
+
+    private static <E> boolean casTabAt(Node<E>[] tab, int i, Node<E> expected, Node<E> node) {
+        return BIN.compareAndSet(tab, i, expected, node);
+    }
+
+    private static <E> void setTabAt(Node<E>[] tab, int i, Node<E> node) {
+        BIN.setRelease(tab, i, node);
+    }
+
+    /**
+     * Updates the element count and, if the table is over its threshold,
+     * starts a resize or joins the one in progress.
+     */
+    private void addCount(int delta) {
+        count.add(delta);
+        if (delta <= 0) {
+            return;
+        }
+        long s = count.sum();
+        Node<E>[] tab;
+        int sc;
+        while (s >= (sc = sizeCtl) && (tab = table).length < MAXIMUM_CAPACITY) {
+            final int rs = resizeStamp(tab.length) << RESIZE_STAMP_SHIFT;
+            if (sc < 0) {
+                Node<E>[] nt = nextTable;
+                if ((sc >>> RESIZE_STAMP_SHIFT) != (rs >>> RESIZE_STAMP_SHIFT) || sc == rs + MAX_RESIZERS
+                        || sc == rs + 1 || nt == null || transferIndex <= 0) {
+                    break;
+                }
+                if (SIZE_CTL.compareAndSet(this, sc, sc + 1)) {
+                    transfer(tab, nt);
+                }
+            } else if (SIZE_CTL.compareAndSet(this, sc, rs + 2)) {
+                transfer(tab, null);
+            }
+            s = count.sum();
+        }
+    }
+
+    private Node<E>[] helpTransfer(Node<E>[] tab, ForwardingNode<E> f) {
+        final Node<E>[] nextTab = f.nextTable;
+        final int rs = resizeStamp(tab.length) << RESIZE_STAMP_SHIFT;
+        int sc;
+        while (nextTab == nextTable && table == tab && (sc = sizeCtl) < 0) {
+            if ((sc >>> RESIZE_STAMP_SHIFT) != (rs >>> RESIZE_STAMP_SHIFT) || sc == rs + MAX_RESIZERS
+                    || sc == rs + 1 || transferIndex <= 0) {
+                break;
+            }
+            if (SIZE_CTL.compareAndSet(this, sc, sc + 1)) {
+                transfer(tab, nextTab);
+                break;
+            }
+        }
+        return nextTab;
+    }
+
+    /**
+     * Moves bins of {@code tab} into {@code nextTab}, claiming them by strides
+     * from {@link #transferIndex}. Bins are copied rather than relinked, so
+     * lock-free readers still traversing the old bin see a consistent chain.
+     * The last resizer to leave rechecks the whole table and publishes it.
+     */
+    @SuppressWarnings("unchecked")
+    private void transfer(Node<E>[] tab, Node<E>[] nextTab) {
+        final int n = tab.length;
+        int stride = NCPU > 1 ? (n >>> 3) / NCPU : n;
+        if (stride < MIN_TRANSFER_STRIDE) {
+            stride = MIN_TRANSFER_STRIDE;
+        }
+        if (nextTab == null) {
+            if (SetMetrics.ENABLED) {
+                resizeStart = System.nanoTime();
+            }
+            nextTab = (Node<E>[]) new Node<?>[n << 1];
+            nextTable = nextTab;
+            transferIndex = n;
+        }
+        final ForwardingNode<E> fwd = new ForwardingNode<>(nextTab);
+        boolean advance = true;
+        boolean finishing = false;
+        for (int i = 0, bound = 0; ; ) {
+            while (advance) {
+                int nextIndex;
+                int nextBound;
+                if (--i >= bound || finishing) {
+                    advance = false;
+                } else if ((nextIndex = transferIndex) <= 0) {
+                    i = -1;
+                    advance = false;
+                } else if (TRANSFER_INDEX.compareAndSet(this, nextIndex,
+                        nextBound = nextIndex > stride ? nextIndex - stride : 0)) {
+                    bound = nextBound;
+                    i = nextIndex - 1;
+                    advance = false;
+                }
+            }
+            if (i < 0) {
+                if (finishing) {
+                    nextTable = null;
+                    table = nextTab;
+                    sizeCtl = n; //load factor 1/2 от новой ёмкости
+                    final SetMetrics metrics = this.metrics;
+                    if (SetMetrics.ENABLED && metrics != null) {
+                        metrics.resized(n, n << 1, System.nanoTime() - resizeStart);
+                    }
+                    return;
+                }
+                final int sc = sizeCtl;
+                if (SIZE_CTL.compareAndSet(this, sc, sc - 1)) {
+                    if (sc - 2 != resizeStamp(n) << RESIZE_STAMP_SHIFT) {
+                        return;
+                    }
+                    finishing = advance = true;
+                    i = n;
+                }
+                continue;
+            }
+            final Node<E> f = tabAt(tab, i);
+            if (f == null) {
+                advance = casTabAt(tab, i, null, fwd);
+            } else if (f.hash == MOVED) {
+                advance = true;
+            } else {
+                synchronized (f) {
+                    if (tabAt(tab, i) == f) {
+                        //хвост, целиком попадающий в один бин, переиспользуем
+                        int runBit = f.hash & n;
+                        Node<E> lastRun = f;
+                        for (Node<E> p = f.next; p != null; p = p.next) {
+                            final int b = p.hash & n;
+                            if (b != runBit) {
+                                runBit = b;
+                                lastRun = p;
+                            }
+                        }
+                        Node<E> lo = runBit == 0 ? lastRun : null;
+                        Node<E> hi = runBit != 0 ? lastRun : null;
+                        for (Node<E> p = f; p != lastRun; p = p.next) {
+                            if ((p.hash & n) == 0) {
+                                lo = new Node<>(p.hash, p.value, lo);
+                            } else {
+                                hi = new Node<>(p.hash, p.value, hi);
+                            }
+                        }
+                        setTabAt(nextTab, i, lo);
+                        setTabAt(nextTab, i + n, hi);
+                        setTabAt(tab, i, fwd);
+                        advance = true;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package ru.mail.polis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe {@link RedBlackTree} for read-mostly workloads. Writers take
+ * the write lock of a {@link StampedLock}. Queries first run without any
+ * lock and are validated against the stamp afterwards; only if a writer got
+ * in between are they repeated under the read lock. A query racing with a
+ * writer may see a half-rebalanced tree and even fail on it, so its result or
+ * exception is discarded unless the stamp is still valid. Links seen half
+ * rotated may form a cycle, so the tree gives up a search that goes deeper
+ * than a red-black tree of its size can be, and it is retried as well.
+ * <p>
+ * Iterators, spliterators and {@code inorderTraverse} copy the elements
+ * under the read lock, so they see a consistent state of the set.
+ */
+public class ConcurrentRedBlackTree<E extends Comparable<E>> implements IOrderStatisticSet<E>, INavigableSet<E> {
+
+    private final RedBlackTree<E> tree;
+    private final Comparator<E> comparator;
+    private final StampedLock lock = new StampedLock();
+
+    public ConcurrentRedBlackTree() {
+        this(null);
+    }
+
+    public ConcurrentRedBlackTree(Comparator<E> comparator) {
+        this.tree = new RedBlackTree<>(comparator);
+        this.comparator = comparator;
+    }
+
+    @Override
+    public int size() {
+        return read(tree::size);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return read(tree::isEmpty);
+    }
+
+    @Override
+    public boolean contains(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        //то же, что read(), но без захватывающей лямбды: это самый частый запрос
+        final long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final boolean res = tree.contains(value);
+                if (lock.validate(stamp)) {
+                    return res;
+                }
+            } catch (RuntimeException e) {
+                //дерево могло быть в промежуточном состоянии, повторяем под блокировкой
+            }
+        }
+        final long readStamp = lock.readLock();
+        try {
+            return tree.contains(value);
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    @Override
+    public E first() {
+        return read(tree::first);
+    }
+
+    @Override
+    public E last() {
+        return read(tree::last);
+    }
+
+    @Override
+    public E floor(E value) {
+        return read(() -> tree.floor(value));
+    }
+
+    @Override
+    public E ceiling(E value) {
+        return read(() -> tree.ceiling(value));
+    }
+
+    @Override
+    public E higher(E value) {
+        return read(() -> tree.higher(value));
+    }
+
+    @Override
+    public E lower(E value) {
+        return read(() -> tree.lower(value));
+    }
+
+    @Override
+    public int rank(E value) {
+        return read(() -> tree.rank(value));
+    }
+
+    @Override
+    public E select(int index) {
+        return read(() -> tree.select(index));
+    }
+
+    @Override
+    public int countInRange(E from, E to) {
+        return read(() -> tree.countInRange(from, to));
+    }
+
+    @Override
+    public List<E> inorderTraverse() {
+        final long stamp = lock.readLock();
+        try {
+            return tree.inorderTraverse();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return iterator(null, false, null, false, false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return iterator(null, false, null, false, true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        List<E> elements = copy(null, false, null, false, false);
+        return Spliterators.spliterator(elements, Spliterator.ORDERED | Spliterator.DISTINCT
+                | Spliterator.NONNULL | Spliterator.IMMUTABLE | (comparator == null ? Spliterator.SORTED : 0));
+    }
+
+    /**
+     * Attaches the receiver to the underlying tree, it must be thread-safe:
+     * optimistic reads report events concurrently and may report them for
+     * a lookup that is then retried under the lock.
+     */
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        final long stamp = lock.writeLock();
+        try {
+            tree.setMetrics(metrics);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return new EytzingerSet<>(this, comparator);
+    }
+
+    @Override
+    public boolean add(E value) {
+        final long stamp = lock.writeLock();
+        try {
+            return tree.add(value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(E value) {
+        final long stamp = lock.writeLock();
+        try {
+            return tree.remove(value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean addAllSorted(Iterator<? extends E> sorted, int size) {
+        final long stamp = lock.writeLock();
+        try {
+            return tree.addAllSorted(sorted, size);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public E pollFirst() {
+        final long stamp = lock.writeLock();
+        try {
+            return tree.pollFirst();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public E pollLast() {
+        final long stamp = lock.writeLock();
+        try {
+            return tree.pollLast();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public INavigableSet<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (compare(from, to) > 0) {
+            throw new IllegalArgumentException("from > to");
+        }
+        return new View(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public INavigableSet<E> headSet(E to, boolean inclusive) {
+        if (to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(null, false, to, inclusive);
+    }
+
+    @Override
+    public INavigableSet<E> tailSet(E from, boolean inclusive) {
+        if (from == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(from, inclusive, null, false);
+    }
+
+    /**
+     * Runs the query optimistically and, if a writer interfered, once more under the read lock.
+     */
+    private <R> R read(Supplier<R> query) {
+        final long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                R res = query.get();
+                if (lock.validate(stamp)) {
+                    return res;
+                }
+            } catch (RuntimeException e) {
+                //дерево могло быть в промежуточном состоянии, повторяем под блокировкой
+            }
+        }
+        final long readStamp = lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    private Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending) {
+        return Collections.unmodifiableList(copy(from, fromInclusive, to, toInclusive, descending)).iterator();
+    }
+
+    /**
+     * @return elements from the {@code from} bound to the {@code to} one, copied under the read lock
+     */
+    private List<E> copy(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending) {
+        final E lo = descending ? to : from;
+        final boolean loInclusive = descending ? toInclusive : fromInclusive;
+        final E hi = descending ? from : to;
+        final boolean hiInclusive = descending ? fromInclusive : toInclusive;
+        final long stamp = lock.readLock();
+        try {
+            INavigableSet<E> range = tree;
+            if (lo != null && hi != null) {
+                range = tree.subSet(lo, loInclusive, hi, hiInclusive);
+            } else if (lo != null) {
+                range = tree.tailSet(lo, loInclusive);
+            } else if (hi != null) {
+                range = tree.headSet(hi, hiInclusive);
+            }
+            List<E> res = new ArrayList<>();
+            for (Iterator<E> it = descending ? range.descendingIterator() : range.iterator(); it.hasNext(); ) {
+                res.add(it.next());
+            }
+            return res;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int compare(E v1, E v2) {
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    private class View extends SubSet<E> {
+        View(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            super(ConcurrentRedBlackTree.this, comparator, lo, loInclusive, hi, hiInclusive);
+        }
+
+        @Override
+        Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending) {
+            return ConcurrentRedBlackTree.this.iterator(from, fromInclusive, to, toInclusive, descending);
+        }
+
+        @Override
+        SubSet<E> create(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            return new View(lo, loInclusive, hi, hiInclusive);
+        }
+    }
+}
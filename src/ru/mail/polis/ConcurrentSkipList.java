@@ -0,0 +1,822 @@
+package ru.mail.polis;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free sorted set on a skip list, in the manner of
+ * {@link java.util.concurrent.ConcurrentSkipListSet}.
+ * <p>
+ * The elements are kept in a sorted linked list of nodes; a node is removed
+ * by nulling its value (the linearization point), then appending a marker
+ * node after it, so that nothing can be inserted after a deleted node, and
+ * then unlinking it from its predecessor. Towers of index nodes over
+ * random nodes form the upper levels; they only speed up searches, so
+ * inserting or unlinking them may lag behind the base list. Every change is
+ * a single CAS and any thread that runs into a half-removed node helps to
+ * finish the removal.
+ * <p>
+ * Iterators and views are weakly consistent: they never fail, return
+ * every element present for the whole iteration and may or may not
+ * return elements added or removed meanwhile.
+ */
+public class ConcurrentSkipList<E extends Comparable<E>> implements INavigableSet<E> {
+
+    static final class Node<E> {
+        /**
+         * Null for the base header and for markers.
+         */
+        final E key;
+        /**
+         * The key itself while the element is present, null once it is removed,
+         * the node itself for a marker and {@link #BASE_HEADER} for the base header.
+         */
+        volatile Object value;
+        volatile Node<E> next;
+
+        Node(E key, Object value, Node<E> next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        /**
+         * Creates a marker.
+         */
+        Node(Node<E> next) {
+            this.key = null;
+            this.value = this;
+            this.next = next;
+        }
+
+        boolean casValue(Object expected, Object value) {
+            return VALUE.compareAndSet(this, expected, value);
+        }
+
+        boolean casNext(Node<E> expected, Node<E> next) {
+            return NEXT.compareAndSet(this, expected, next);
+        }
+
+        boolean isMarker() {
+            return value == this;
+        }
+
+        boolean isBaseHeader() {
+            return value == BASE_HEADER;
+        }
+
+        /**
+         * @return the key if the element is present, null if it is removed
+         */
+        E validKey() {
+            final Object v = value;
+            return v == null || v == this || v == BASE_HEADER ? null : key;
+        }
+
+        /**
+         * Finishes the removal of this node, whose predecessor is {@code b}
+         * and successor {@code f}: appends a marker or unlinks the node.
+         */
+        void helpDelete(Node<E> b, Node<E> f) {
+            if (f == next && this == b.next) {
+                if (f == null || f.value != f) {
+                    casNext(f, new Node<>(f));
+                } else {
+                    b.casNext(this, f.next);
+                }
+            }
+        }
+    }
+
+    static class Index<E> {
+        final Node<E> node;
+        final Index<E> down;
+        volatile Index<E> right;
+
+        Index(Node<E> node, Index<E> down, Index<E> right) {
+            this.node = node;
+            this.down = down;
+            this.right = right;
+        }
+
+        /**
+         * Inserts {@code x} between this index and {@code r}, unless the node of this one is removed.
+         */
+        boolean link(Index<E> r, Index<E> x) {
+            x.right = r;
+            return node.value != null && RIGHT.compareAndSet(this, r, x);
+        }
+
+        /**
+         * Unlinks the next index {@code r}, unless the node of this one is removed.
+         */
+        boolean unlink(Index<E> r) {
+            return node.value != null && RIGHT.compareAndSet(this, r, r.right);
+        }
+    }
+
+    static final class HeadIndex<E> extends Index<E> {
+        final int level;
+
+        HeadIndex(Node<E> node, Index<E> down, Index<E> right, int level) {
+            super(node, down, right);
+            this.level = level;
+        }
+    }
+
+    private static final Object BASE_HEADER = new Object();
+    private static final int EQ = 1;
+    private static final int LT = 2;
+    private static final int GT = 0;
+
+    private static final VarHandle VALUE;
+    private static final VarHandle NEXT;
+    private static final VarHandle RIGHT;
+    private static final VarHandle HEAD;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            VALUE = lookup.findVarHandle(Node.class, "value", Object.class);
+            NEXT = lookup.findVarHandle(Node.class, "next", Node.class);
+            RIGHT = lookup.findVarHandle(Index.class, "right", Index.class);
+            HEAD = lookup.findVarHandle(ConcurrentSkipList.class, "head", HeadIndex.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Comparator<E> comparator;
+    private final LongAdder count = new LongAdder();
+    private volatile HeadIndex<E> head = new HeadIndex<>(new Node<>(null, BASE_HEADER, null), null, null, 1);
+    private volatile SetMetrics metrics;
+
+    public ConcurrentSkipList() {
+        this(null);
+    }
+
+    public ConcurrentSkipList(Comparator<E> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Takes a snapshot of a counter updated concurrently with the set,
+     * so it is exact only when there are no concurrent updates.
+     */
+    @Override
+    public int size() {
+        long n = count.sum();
+        return n < 0 ? 0 : n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return findFirst() == null;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final SetMetrics metrics = this.metrics;
+        if (SetMetrics.ENABLED && metrics != null) {
+            final int[] probes = new int[1];
+            final boolean res = findNode(value, probes) != null;
+            metrics.probed(probes[0]);
+            return res;
+        }
+        return findNode(value) != null;
+    }
+
+    /**
+     * Reports the number of index and base nodes a lookup compared with the
+     * key. The receiver must be thread-safe.
+     */
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean add(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        Node<E> z;
+        outer:
+        for (;;) {
+            for (Node<E> b = findPredecessor(value), n = b.next; ; ) {
+                if (n != null) {
+                    final Node<E> f = n.next;
+                    if (n != b.next) { //несогласованное чтение
+                        break;
+                    }
+                    final Object v = n.value;
+                    if (v == null) { //n удаляется
+                        n.helpDelete(b, f);
+                        break;
+                    }
+                    if (b.value == null || v == n) { //b удаляется
+                        break;
+                    }
+                    final int c = compare(value, n.key);
+                    if (c > 0) {
+                        b = n;
+                        n = f;
+                        continue;
+                    }
+                    if (c == 0) {
+                        return false;
+                    }
+                }
+                z = new Node<>(value, value, n);
+                if (!b.casNext(n, z)) {
+                    break;
+                }
+                break outer;
+            }
+        }
+        count.increment();
+        addIndices(z);
+        return true;
+    }
+
+    @Override
+    public boolean remove(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        for (;;) {
+            for (Node<E> b = findPredecessor(value), n = b.next; ; ) {
+                if (n == null) {
+                    return false;
+                }
+                final Node<E> f = n.next;
+                if (n != b.next) {
+                    break;
+                }
+                final Object v = n.value;
+                if (v == null) {
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n) {
+                    break;
+                }
+                final int c = compare(value, n.key);
+                if (c < 0) {
+                    return false;
+                }
+                if (c > 0) {
+                    b = n;
+                    n = f;
+                    continue;
+                }
+                if (!n.casValue(v, null)) {
+                    break;
+                }
+                count.decrement();
+                if (!n.casNext(f, new Node<>(f)) || !b.casNext(n, f)) {
+                    findNode(value); //доудаляем поиском
+                } else {
+                    findPredecessor(value); //убираем индексы удалённого узла
+                }
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public E first() {
+        for (;;) {
+            final Node<E> n = findFirst();
+            if (n == null) {
+                throw new NoSuchElementException("Set is empty, no first element");
+            }
+            final E key = n.validKey();
+            if (key != null) {
+                return key;
+            }
+        }
+    }
+
+    @Override
+    public E last() {
+        for (;;) {
+            final Node<E> n = findLast();
+            if (n == null) {
+                throw new NoSuchElementException("Set is empty, no last element");
+            }
+            final E key = n.validKey();
+            if (key != null) {
+                return key;
+            }
+        }
+    }
+
+    @Override
+    public List<E> inorderTraverse() {
+        List<E> res = new ArrayList<>();
+        for (Iterator<E> it = iterator(); it.hasNext(); ) {
+            res.add(it.next());
+        }
+        return res;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(false, null, false, null, false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new Itr(true, null, false, null, false);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.CONCURRENT);
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return new EytzingerSet<>(this, comparator); //по слабо согласованному итератору
+    }
+
+    @Override
+    public E floor(E value) {
+        return near(value, LT | EQ);
+    }
+
+    @Override
+    public E ceiling(E value) {
+        return near(value, GT | EQ);
+    }
+
+    @Override
+    public E higher(E value) {
+        return near(value, GT);
+    }
+
+    @Override
+    public E lower(E value) {
+        return near(value, LT);
+    }
+
+    @Override
+    public E pollFirst() {
+        for (;;) {
+            final Node<E> n = findFirst();
+            if (n == null) {
+                return null;
+            }
+            final E key = n.validKey();
+            if (key != null && remove(key)) {
+                return key;
+            }
+        }
+    }
+
+    @Override
+    public E pollLast() {
+        for (;;) {
+            final Node<E> n = findLast();
+            if (n == null) {
+                return null;
+            }
+            final E key = n.validKey();
+            if (key != null && remove(key)) {
+                return key;
+            }
+        }
+    }
+
+    @Override
+    public INavigableSet<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (compare(from, to) > 0) {
+            throw new IllegalArgumentException("from > to");
+        }
+        return new View(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public INavigableSet<E> headSet(E to, boolean inclusive) {
+        if (to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(null, false, to, inclusive);
+    }
+
+    @Override
+    public INavigableSet<E> tailSet(E from, boolean inclusive) {
+        if (from == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(from, inclusive, null, false);
+    }
+
+    /**
+     * @return a base node with a key less than the given one, or the base header;
+     * index nodes of removed nodes met on the way are unlinked
+     */
+    private Node<E> findPredecessor(E key) {
+        return findPredecessor(key, null);
+    }
+
+    /**
+     * @param probes if not null, its only element counts the nodes compared with the key
+     */
+    private Node<E> findPredecessor(E key, int[] probes) {
+        for (;;) {
+            for (Index<E> q = head, r = q.right; ; ) {
+                if (r != null) {
+                    final Node<E> n = r.node;
+                    if (n.value == null) {
+                        if (!q.unlink(r)) {
+                            break;
+                        }
+                        r = q.right;
+                        continue;
+                    }
+                    if (probes != null) {
+                        probes[0]++;
+                    }
+                    if (compare(key, n.key) > 0) {
+                        q = r;
+                        r = r.right;
+                        continue;
+                    }
+                }
+                final Index<E> d = q.down;
+                if (d == null) {
+                    return q.node;
+                }
+                q = d;
+                r = d.right;
+            }
+        }
+    }
+
+    /**
+     * @return the node of the key or null, helping to remove the deleted nodes on the way
+     */
+    private Node<E> findNode(E key) {
+        return findNode(key, null);
+    }
+
+    /**
+     * @param probes if not null, its only element counts the nodes compared with the key
+     */
+    private Node<E> findNode(E key, int[] probes) {
+        for (;;) {
+            for (Node<E> b = findPredecessor(key, probes), n = b.next; ; ) {
+                if (n == null) {
+                    return null;
+                }
+                final Node<E> f = n.next;
+                if (n != b.next) {
+                    break;
+                }
+                final Object v = n.value;
+                if (v == null) {
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n) {
+                    break;
+                }
+                if (probes != null) {
+                    probes[0]++;
+                }
+                final int c = compare(key, n.key);
+                if (c == 0) {
+                    return n;
+                }
+                if (c < 0) {
+                    return null;
+                }
+                b = n;
+                n = f;
+            }
+        }
+    }
+
+    /**
+     * @param rel {@link #LT}, {@link #GT}, optionally with {@link #EQ}
+     * @return the node nearest to the key in the given relation, or null
+     */
+    private Node<E> findNear(E key, int rel) {
+        for (;;) {
+            for (Node<E> b = findPredecessor(key), n = b.next; ; ) {
+                if (n == null) {
+                    return (rel & LT) == 0 || b.isBaseHeader() ? null : b;
+                }
+                final Node<E> f = n.next;
+                if (n != b.next) {
+                    break;
+                }
+                final Object v = n.value;
+                if (v == null) {
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n) {
+                    break;
+                }
+                final int c = compare(key, n.key);
+                if (c == 0 && (rel & EQ) != 0 || c < 0 && (rel & LT) == 0) {
+                    return n;
+                }
+                if (c <= 0 && (rel & LT) != 0) {
+                    return b.isBaseHeader() ? null : b;
+                }
+                b = n;
+                n = f;
+            }
+        }
+    }
+
+    private E near(E key, int rel) {
+        if (key == null) {
+            throw new NullPointerException("Value is null");
+        }
+        for (;;) {
+            final Node<E> n = findNear(key, rel);
+            if (n == null) {
+                return null;
+            }
+            final E res = n.validKey();
+            if (res != null) {
+                return res;
+            }
+        }
+    }
+
+    private Node<E> findFirst() {
+        for (;;) {
+            final Node<E> b = head.node;
+            final Node<E> n = b.next;
+            if (n == null) {
+                return null;
+            }
+            if (n.value != null) {
+                return n;
+            }
+            n.helpDelete(b, n.next);
+        }
+    }
+
+    /**
+     * Goes right and down along the index levels, then along the base list to its end.
+     */
+    private Node<E> findLast() {
+        Index<E> q = head;
+        for (;;) {
+            final Index<E> r = q.right;
+            if (r != null) {
+                if (r.node.value == null) {
+                    q.unlink(r);
+                    q = head;
+                } else {
+                    q = r;
+                }
+            } else if (q.down != null) {
+                q = q.down;
+            } else {
+                for (Node<E> b = q.node, n = b.next; ; ) {
+                    if (n == null) {
+                        return b.isBaseHeader() ? null : b;
+                    }
+                    final Node<E> f = n.next;
+                    if (n != b.next) {
+                        break;
+                    }
+                    final Object v = n.value;
+                    if (v == null) {
+                        n.helpDelete(b, f);
+                        break;
+                    }
+                    if (b.value == null || v == n) {
+                        break;
+                    }
+                    b = n;
+                    n = f;
+                }
+                q = head;
+            }
+        }
+    }
+
+    /**
+     * Builds a tower of geometrically distributed height (1/4 of the nodes get
+     * one at all, then 1/2 per level) over the inserted node and links it into
+     * the index levels top-down, adding a level to the head if the tower is higher.
+     */
+    @SuppressWarnings("unchecked")
+    private void addIndices(Node<E> z) {
+        int rnd = ThreadLocalRandom.current().nextInt();
+        if ((rnd & 0x80000001) != 0) {
+            return;
+        }
+        int level = 1;
+        while (((rnd >>>= 1) & 1) != 0) {
+            level++;
+        }
+        Index<E> idx = null;
+        HeadIndex<E> h = head;
+        final int max = h.level;
+        if (level <= max) {
+            for (int i = 1; i <= level; i++) {
+                idx = new Index<>(z, idx, null);
+            }
+        } else {
+            level = max + 1;
+            Index<E>[] idxs = (Index<E>[]) new Index<?>[level + 1];
+            for (int i = 1; i <= level; i++) {
+                idxs[i] = idx = new Index<>(z, idx, null);
+            }
+            for (;;) {
+                h = head;
+                final int oldLevel = h.level;
+                if (level <= oldLevel) {
+                    break;
+                }
+                HeadIndex<E> newh = h;
+                for (int j = oldLevel + 1; j <= level; j++) {
+                    newh = new HeadIndex<>(h.node, newh, idxs[j], j);
+                }
+                if (HEAD.compareAndSet(this, h, newh)) {
+                    h = newh;
+                    idx = idxs[level = oldLevel];
+                    break;
+                }
+            }
+        }
+        final E key = z.key;
+        splice:
+        for (int insertionLevel = level; ; ) {
+            int j = h.level;
+            for (Index<E> q = h, r = q.right, t = idx; ; ) {
+                if (q == null || t == null) {
+                    break splice;
+                }
+                if (r != null) {
+                    final Node<E> n = r.node;
+                    final int c = compare(key, n.key);
+                    if (n.value == null) {
+                        if (!q.unlink(r)) {
+                            break;
+                        }
+                        r = q.right;
+                        continue;
+                    }
+                    if (c > 0) {
+                        q = r;
+                        r = r.right;
+                        continue;
+                    }
+                }
+                if (j == insertionLevel) {
+                    if (!q.link(r, t)) {
+                        break;
+                    }
+                    if (t.node.value == null) { //узел удалили, пока строили башню
+                        findNode(key);
+                        break splice;
+                    }
+                    if (--insertionLevel == 0) {
+                        break splice;
+                    }
+                }
+                if (--j >= insertionLevel && j < level) {
+                    t = t.down;
+                }
+                q = q.down;
+                r = q.right;
+            }
+        }
+    }
+
+    private int compare(E v1, E v2) {
+        final SetMetrics metrics = this.metrics;
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    /**
+     * Weakly consistent iterator: walks the base list ascending, or looks up
+     * the lower element of the last returned one descending.
+     */
+    private class Itr implements Iterator<E> {
+        private final boolean descending;
+        private final E to;
+        private final boolean toInclusive;
+        private Node<E> next;
+        private E nextKey;
+
+        /**
+         * @param from bound where the iteration starts (the lower one when ascending), null if none
+         * @param to   bound where the iteration ends (the higher one when ascending), null if none
+         */
+        Itr(boolean descending, E from, boolean fromInclusive, E to, boolean toInclusive) {
+            this.descending = descending;
+            this.to = to;
+            this.toInclusive = toInclusive;
+            for (;;) {
+                if (from == null) {
+                    next = descending ? findLast() : findFirst();
+                } else {
+                    next = findNear(from, (descending ? LT : GT) | (fromInclusive ? EQ : 0));
+                }
+                if (next == null) {
+                    break;
+                }
+                nextKey = next.validKey();
+                if (nextKey != null) {
+                    break;
+                }
+            }
+            checkEnd();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final E res = nextKey;
+            advance();
+            return res;
+        }
+
+        private void advance() {
+            if (descending) {
+                for (;;) {
+                    next = findNear(nextKey, LT);
+                    if (next == null || (nextKey = next.validKey()) != null) {
+                        break;
+                    }
+                }
+            } else {
+                for (;;) {
+                    next = next.next;
+                    if (next == null || (nextKey = next.validKey()) != null) {
+                        break;
+                    }
+                }
+            }
+            checkEnd();
+        }
+
+        private void checkEnd() {
+            if (next == null || to == null) {
+                return;
+            }
+            int cmp = compare(nextKey, to);
+            if (descending) {
+                cmp = -cmp;
+            }
+            if (cmp > 0 || cmp == 0 && !toInclusive) {
+                next = null;
+                nextKey = null;
+            }
+        }
+    }
+
+    private class View extends SubSet<E> {
+        View(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            super(ConcurrentSkipList.this, comparator, lo, loInclusive, hi, hiInclusive);
+        }
+
+        @Override
+        Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending) {
+            return new Itr(descending, from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        SubSet<E> create(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            return new View(lo, loInclusive, hi, hiInclusive);
+        }
+    }
+}
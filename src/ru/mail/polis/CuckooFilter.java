@@ -0,0 +1,252 @@
+package ru.mail.polis;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Cuckoo filter over 64-bit hashes, the membership filter of {@link FilteredSet}.
+ * A bucket is a single {@code long} split into lanes of 8, 16 or 32 bits,
+ * each holding a nonzero fingerprint of a hash or 0 if free. A fingerprint
+ * lives in one of two buckets, the second one is the first one XOR a hash of
+ * the fingerprint, so it can be moved between them without the key, and
+ * removed. A query reads the two words and compares all lanes at once by
+ * bit tricks (SWAR), like {@link SwissHashTable}.
+ * <p>
+ * A fingerprint that finds no place after {@link #MAX_KICKS} evictions goes
+ * to a small stash; when the stash is full and both buckets of a new
+ * fingerprint are taken, {@link #add} fails without changing the filter.
+ * <p>
+ * Keys with equal hashes have equal fingerprints in the same two buckets, so
+ * no number of evictions makes room for more of them than the buckets hold.
+ * When a bucket's worth of copies of a fingerprint is already there, a new
+ * copy is not stored: the pair of buckets is saturated, it keeps all its
+ * copies of that fingerprint from then on and removals of it are no-ops.
+ * Duplicates thus never fill the stash and never make {@link #add} fail.
+ */
+final class CuckooFilter {
+
+    private static final int MAX_KICKS = 500;
+    private static final int STASH_SIZE = 16;
+
+    private final int width; //бит в отпечатке
+    private final long lane; //маска младшей дорожки
+    private final long lsb; //младший бит каждой дорожки
+    private final long msb; //старший бит каждой дорожки
+    private final long[] buckets;
+    private final int mask;
+    private final int capacity;
+    private final double falsePositiveRate;
+    private final long[] stash = new long[STASH_SIZE]; //бакет << 32 | отпечаток
+    private int stashed;
+    private Set<Long> saturated; //ключи насыщенных пар бакетов, как в тайнике
+    private int random = 0x2545F491; //xorshift для выбора вытесняемого
+
+    /**
+     * @param capacity          number of fingerprints to hold
+     * @param falsePositiveRate target probability that a hash never added passes the filter
+     */
+    CuckooFilter(int capacity, double falsePositiveRate) {
+        //в двух бакетах 2 * slots отпечатков, каждый совпадает с вероятностью 2^-width
+        int width = 8;
+        while (width < 32 && 2.0 * (Long.SIZE / width) / (1L << width) > falsePositiveRate) {
+            width <<= 1;
+        }
+        this.width = width;
+        this.lane = (1L << width) - 1;
+        this.lsb = Long.divideUnsigned(-1L, lane);
+        this.msb = lsb << (width - 1);
+        //по два отпечатка в бакете заполняются до 84%, по четыре и больше - до 95%
+        final int slots = Long.SIZE / width;
+        final double load = slots == 2 ? 0.8 : 0.9;
+        final long n = Math.max(2, (long) Math.ceil(capacity / (slots * load)));
+        final int count = (int) Math.min(1 << 30, Long.highestOneBit(n - 1) << 1);
+        this.buckets = new long[count];
+        this.mask = count - 1;
+        this.capacity = capacity;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * @return the capacity the filter was sized for
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the false-positive rate the filter was sized for
+     */
+    double falsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * @return false if the hash was never added, true if it was or, rarely, if it wasn't
+     */
+    boolean mightContain(long hash) {
+        final long fp = fingerprint(hash);
+        final int b1 = (int) hash & mask;
+        final int b2 = alternate(b1, fp);
+        final long pattern = fp * lsb;
+        if (match(buckets[b1], pattern) != 0 || match(buckets[b2], pattern) != 0) {
+            return true;
+        }
+        return stashed != 0 && stashIndex(b1, b2, fp) >= 0;
+    }
+
+    /**
+     * Adds the hash; adding a hash several times needs as many removals.
+     *
+     * @return false if the filter is full, then it is left as it was
+     */
+    boolean add(long hash) {
+        long fp = fingerprint(hash);
+        int b = (int) hash & mask;
+        final int b2 = alternate(b, fp);
+        if (put(b, fp) || put(b2, fp)) {
+            return true;
+        }
+        if (saturated != null && saturated.contains(key(b, b2, fp))) {
+            return true;
+        }
+        if (copies(b, fp) + (b2 == b ? 0 : copies(b2, fp)) >= Long.SIZE / width) {
+            //случайно столько одинаковых отпечатков не набирается, это ключи с равными хешами
+            if (saturated == null) {
+                saturated = new HashSet<>();
+            }
+            saturated.add(key(b, b2, fp));
+            return true;
+        }
+        if (stashed == STASH_SIZE) {
+            //вытеснения могут не найти места, а последний вытесненный некуда будет деть
+            return false;
+        }
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            final int r = nextRandom();
+            if ((r & 1) != 0) {
+                b = alternate(b, fp);
+            }
+            final int shift = ((r >>> 1) & (Long.SIZE / width - 1)) * width;
+            final long word = buckets[b];
+            final long evicted = (word >>> shift) & lane;
+            buckets[b] = word & ~(lane << shift) | fp << shift;
+            fp = evicted;
+            b = alternate(b, fp);
+            if (put(b, fp)) {
+                return true;
+            }
+        }
+        stash[stashed++] = key(b, alternate(b, fp), fp);
+        return true;
+    }
+
+    /**
+     * Removes one copy of the fingerprint of the hash, unless its pair of
+     * buckets is saturated.
+     *
+     * @return false if there is none
+     */
+    boolean remove(long hash) {
+        final long fp = fingerprint(hash);
+        final int b1 = (int) hash & mask;
+        final int b2 = alternate(b1, fp);
+        if (saturated != null && saturated.contains(key(b1, b2, fp))) {
+            return true;
+        }
+        if (clear(b1, fp) || clear(b2, fp)) {
+            return true;
+        }
+        final int idx = stashed == 0 ? -1 : stashIndex(b1, b2, fp);
+        if (idx < 0) {
+            return false;
+        }
+        stash[idx] = stash[--stashed];
+        return true;
+    }
+
+    private boolean put(int bucket, long fp) {
+        final long word = buckets[bucket];
+        final long free = match(word, 0);
+        if (free == 0) {
+            return false;
+        }
+        buckets[bucket] = word | fp << shift(free);
+        return true;
+    }
+
+    private boolean clear(int bucket, long fp) {
+        final long word = buckets[bucket];
+        final long found = match(word, fp * lsb);
+        if (found == 0) {
+            return false;
+        }
+        buckets[bucket] = word & ~(lane << shift(found));
+        return true;
+    }
+
+    /**
+     * @return number of lanes of the bucket holding the fingerprint
+     */
+    private int copies(int bucket, long fp) {
+        final long word = buckets[bucket];
+        int res = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += width) {
+            if ((word >>> shift & lane) == fp) {
+                res++;
+            }
+        }
+        return res;
+    }
+
+    private int stashIndex(int b1, int b2, long fp) {
+        final long key = key(b1, b2, fp);
+        for (int i = 0; i < stashed; i++) {
+            if (stash[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the same key for both buckets of the fingerprint
+     */
+    private static long key(int b1, int b2, long fp) {
+        return (long) Math.min(b1, b2) << 32 | fp;
+    }
+
+    /**
+     * @return high bits set in the lanes equal to the pattern lane; the lowest
+     * one is exact, the others may be false, but only above an exact one
+     */
+    private long match(long word, long pattern) {
+        final long x = word ^ pattern;
+        return (x - lsb) & ~x & msb;
+    }
+
+    /**
+     * @return shift of the lane of the lowest bit of the match
+     */
+    private int shift(long match) {
+        return Long.numberOfTrailingZeros(match) / width * width;
+    }
+
+    /**
+     * The top bits of the hash, the bucket is chosen by the bottom ones.
+     */
+    private long fingerprint(long hash) {
+        final long fp = hash >>> (Long.SIZE - width);
+        return fp == 0 ? 1 : fp;
+    }
+
+    private int alternate(int bucket, long fp) {
+        return (bucket ^ (int) ((fp * 0xC6A4A7935BD1E995L) >>> 32)) & mask;
+    }
+
+    private int nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return random;
+    }
+}
@@ -0,0 +1,321 @@
+package ru.mail.polis;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bucketized cuckoo hashing: every element lives in one of two buckets of
+ * 4 slots, chosen by two independent hash functions, so a lookup touches at
+ * most two buckets whatever the keys. Adding to two full buckets evicts a
+ * random element to its other bucket, and so on; a walk of more than
+ * {@link #MAX_KICKS} evictions, e.g. a cycle, rehashes the table with a new
+ * second hash function, doubling it if it is at least half full.
+ * <p>
+ * More than 8 keys with equal hash codes can't be placed by any hash
+ * function. The elements not placed after several rehashes go to a stash,
+ * an {@link AVLTree} searched only when both buckets miss, which is empty
+ * for any reasonable keys. While the stash is in use the table is rehashed
+ * again only after it has grown by an eighth, so adding stays amortized O(1).
+ */
+public class CuckooHashTable<E extends Comparable<E>> implements ISet<E> {
+
+    private static final int BUCKET_SIZE = 4;
+    private static final int MAX_KICKS = 128;
+    private static final int MAX_REHASHES = 4;
+    private static final int NOT_FOUND = -1;
+    private static final int STASHED = -2;
+
+    private final int INITIAL_CAPACITY = 16;
+    private final Comparator<E> comparator;
+    private Object[] slots;
+    private int[] hashes; //перемешанные хеши элементов, чтобы сравнивать только кандидатов
+    private int mask; //число бакетов - 1
+    private int seed; //второй хеш-функции
+    private int random = 0x2545F491; //xorshift для выбора вытесняемого
+    private AVLTree<E> stash;
+    private int addedSinceRehash;
+    private int size;
+    private SetMetrics metrics;
+
+    public CuckooHashTable() {
+        this(null);
+    }
+
+    public CuckooHashTable(Comparator<E> comparator) {
+        this.comparator = comparator;
+        this.stash = new AVLTree<>(comparator);
+        allocate(INITIAL_CAPACITY);
+        seed = nextRandom();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        return indexOf(value) != NOT_FOUND;
+    }
+
+    @Override
+    public boolean add(E value) {
+        if (indexOf(value) != NOT_FOUND) {
+            return false;
+        }
+        size++;
+        addedSinceRehash++;
+        //элементы в stash таблицу не заполняют
+        if ((size - stash.size()) * 8L > slots.length * 7L) {
+            rehash(slots.length << 1, value);
+            return true;
+        }
+        final E homeless = insert(value, hash(value));
+        if (homeless != null) {
+            if (addedSinceRehash * 8L >= size) {
+                rehash(slots.length, homeless);
+            } else {
+                stash.add(homeless);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(E value) {
+        final int idx = indexOf(value);
+        if (idx == NOT_FOUND) {
+            return false;
+        }
+        if (idx == STASHED) {
+            stash.remove(value);
+        } else {
+            slots[idx] = null;
+        }
+        size--;
+        return true;
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+        stash.setMetrics(metrics);
+    }
+
+    /**
+     * Looks the keys up in groups: first hashes them all, then loads both
+     * buckets of every key at once, and only then compares.
+     */
+    @Override
+    public void containsAll(E[] keys, BitSet out) {
+        final int[] h = new int[Batch.GROUP];
+        final int[] first = new int[Batch.GROUP]; //только чтобы загрузить бакеты
+        for (int from = 0; from < keys.length; from += Batch.GROUP) {
+            final int n = Math.min(Batch.GROUP, keys.length - from);
+            for (int i = 0; i < n; i++) {
+                if (keys[from + i] == null) {
+                    throw new NullPointerException("Value is null");
+                }
+                h[i] = hash(keys[from + i]);
+            }
+            for (int i = 0; i < n; i++) {
+                first[i] = hashes[bucket1(h[i]) * BUCKET_SIZE] ^ hashes[bucket2(h[i]) * BUCKET_SIZE];
+            }
+            for (int i = 0; i < n; i++) {
+                out.set(from + i, indexOf(keys[from + i], h[i]) != NOT_FOUND);
+            }
+        }
+    }
+
+    @Override
+    public boolean addAll(E[] keys) {
+        return Batch.addAll(this, keys);
+    }
+
+    /**
+     * @return index of the slot of the value, {@link #NOT_FOUND},
+     * or {@link #STASHED} if the value is in the stash
+     */
+    private int indexOf(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return indexOf(value, hash(value));
+    }
+
+    private int indexOf(E value, int h) {
+        final int b1 = bucket1(h);
+        int idx = find(b1, h, value);
+        int probes = 1;
+        if (idx < 0) {
+            final int b2 = bucket2(h);
+            if (b2 != b1) {
+                idx = find(b2, h, value);
+                probes++;
+            }
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(probes);
+        }
+        if (idx < 0 && !stash.isEmpty() && stash.contains(value)) {
+            return STASHED;
+        }
+        return idx;
+    }
+
+    private int find(int bucket, int h, E value) {
+        final int start = bucket * BUCKET_SIZE;
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (hashes[i] == h && slots[i] != null && compare(value, elementAt(i)) == 0) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Places the value, evicting elements to their other bucket when both
+     * buckets are full.
+     *
+     * @return null, or the element left without a slot after {@link #MAX_KICKS} evictions
+     */
+    private E insert(E value, int h) {
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            final int b1 = bucket1(h);
+            final int b2 = bucket2(h);
+            if (put(b1, value, h) || put(b2, value, h)) {
+                return null;
+            }
+            final int r = nextRandom();
+            final int victim = ((r & 1) == 0 ? b1 : b2) * BUCKET_SIZE + ((r >>> 1) & (BUCKET_SIZE - 1));
+            final E evicted = elementAt(victim);
+            final int evictedHash = hashes[victim];
+            slots[victim] = value;
+            hashes[victim] = h;
+            value = evicted;
+            h = evictedHash;
+        }
+        return value;
+    }
+
+    private boolean put(int bucket, E value, int h) {
+        final int start = bucket * BUCKET_SIZE;
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (slots[i] == null) {
+                slots[i] = value;
+                hashes[i] = h;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reinserts all elements and {@code extra} with a new second hash
+     * function, doubling the capacity between attempts if the table is at
+     * least half full. The elements that still can't be placed go to the stash.
+     */
+    private void rehash(int capacity, E extra) {
+        final long start = SetMetrics.ENABLED ? System.nanoTime() : 0;
+        final int oldCapacity = slots.length;
+        final Object[] oldSlots = slots;
+        final int[] oldHashes = hashes;
+        final AVLTree<E> oldStash = stash;
+        for (int attempt = 1; ; attempt++) {
+            allocate(capacity);
+            seed = nextRandom();
+            List<E> failed = new ArrayList<>();
+            for (int i = 0; i < oldSlots.length; i++) {
+                if (oldSlots[i] != null) {
+                    addHomeless(failed, insert(elementAt(oldSlots, i), oldHashes[i]));
+                }
+            }
+            for (Iterator<E> it = oldStash.iterator(); it.hasNext(); ) {
+                final E value = it.next();
+                addHomeless(failed, insert(value, hash(value)));
+            }
+            addHomeless(failed, insert(extra, hash(extra)));
+            if (failed.isEmpty() || attempt == MAX_REHASHES) {
+                stash = new AVLTree<>(comparator);
+                stash.setMetrics(metrics);
+                for (E value : failed) {
+                    stash.add(value);
+                }
+                break;
+            }
+            if ((size - failed.size()) * 2 > capacity) {
+                capacity <<= 1;
+            }
+        }
+        addedSinceRehash = 0;
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.resized(oldCapacity, slots.length, System.nanoTime() - start);
+        }
+    }
+
+    private void addHomeless(List<E> failed, E homeless) {
+        if (homeless != null) {
+            failed.add(homeless);
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new Object[capacity];
+        hashes = new int[capacity];
+        mask = capacity / BUCKET_SIZE - 1;
+    }
+
+    private static int hash(Object value) {
+        final int h = value.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int bucket1(int h) {
+        return h & mask;
+    }
+
+    /**
+     * Second hash function, the finalizer of MurmurHash3 over the hash and the seed.
+     */
+    private int bucket2(int h) {
+        h ^= seed;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private int nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return random;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int index) {
+        return (E) slots[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(Object[] table, int index) {
+        return (E) table[index];
+    }
+
+    private int compare(E v1, E v2) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+}
@@ -0,0 +1,492 @@
+package ru.mail.polis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+import ru.mail.polis.MappedSortedSet.Codec;
+
+/**
+ * Makes a set survive restarts. Every successful {@code add} and
+ * {@code remove} is appended to a write-ahead log in a directory and
+ * returns only when the log is forced to the storage device.
+ * <p>
+ * With group commit, the writers that arrive while the log is being forced
+ * append their records to a buffer and wait; the next of them writes and
+ * forces the whole buffer at once, so one {@link FileChannel#force} call
+ * serves many updates. Without it, every update writes and forces its own
+ * record under the lock. {@link #addAll} forces a whole batch at once in
+ * both modes.
+ * <p>
+ * When the log outgrows the checkpoint size, a snapshot of the set is
+ * written in the format of {@link MappedSortedSet}, atomically replaces the
+ * previous one, and the log is truncated. An {@link ISortedSet} is scanned
+ * in order; any other set can't be scanned, so its contents are rebuilt in
+ * a temporary tree from the previous snapshot and the log. A failed
+ * checkpoint doesn't fail the update that triggered it, which is durable by
+ * then; it is reported by {@link #checkpointFailure}.
+ * <p>
+ * On {@link #open} the snapshot is bulk-loaded and the tail of the log
+ * replayed; a record torn by a crash ends the log. The records set or clear
+ * a single element, so replaying records already in the snapshot, after a
+ * crash between the two steps of a checkpoint, does no harm.
+ * <p>
+ * All operations are thread-safe and serialized by a lock, which is
+ * released while the log is forced. An update is visible to the other
+ * threads as soon as it is applied, before it is durable. After an I/O
+ * error the set refuses updates.
+ */
+public class DurableSet<E extends Comparable<E>> implements ISet<E>, Closeable {
+
+    private static final String SNAPSHOT = "snapshot";
+    private static final String LOG = "wal";
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_HEADER = Integer.BYTES * 2 + 1; //длина ключа, CRC32C, операция
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final long DEFAULT_CHECKPOINT_SIZE = 64L << 20;
+
+    private final int INITIAL_BUFFER_SIZE = 1 << 16;
+    private final ISet<E> set;
+    private final Path dir;
+    private final Codec<E> codec;
+    private final boolean groupCommit;
+    private final long checkpointSize;
+    private final FileChannel log;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE); //записи, ещё не записанные в лог
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE); //пока pending пишется, записи копятся здесь
+    private long appended; //байтов добавлено в лог с открытия, вместе с pending
+    private long durable; //столько из них уже на диске
+    private long truncated; //значение appended при последнем усечении лога
+    private boolean flushing;
+    private IOException failure;
+    private IOException checkpointFailure; //последнего фонового снимка, null после удачного
+
+    private DurableSet(ISet<E> set, Path dir, Codec<E> codec, boolean groupCommit, long checkpointSize,
+                       FileChannel log) throws IOException {
+        this.set = set;
+        this.dir = dir;
+        this.codec = codec;
+        this.groupCommit = groupCommit;
+        this.checkpointSize = checkpointSize;
+        this.log = log;
+        this.appended = log.size();
+        this.durable = appended;
+    }
+
+    /**
+     * Opens the set with group commit and checkpoints every 64 MB of log.
+     *
+     * @see #open(ISet, Path, Codec, boolean, long)
+     */
+    public static <E extends Comparable<E>> DurableSet<E> open(ISet<E> set, Path dir, Codec<E> codec)
+            throws IOException {
+        return open(set, dir, codec, true, DEFAULT_CHECKPOINT_SIZE);
+    }
+
+    /**
+     * Recovers the contents of the directory, if any, into the set: loads
+     * the snapshot and replays the log after it.
+     *
+     * @param set            empty set to recover into; it must not be used directly afterwards
+     * @param dir            directory of the snapshot and the log, created if missing
+     * @param groupCommit    whether concurrent updates share forces of the log
+     * @param checkpointSize log size in bytes that triggers a checkpoint
+     * @throws IllegalArgumentException if the set is not empty
+     */
+    public static <E extends Comparable<E>> DurableSet<E> open(ISet<E> set, Path dir, Codec<E> codec,
+                                                               boolean groupCommit, long checkpointSize)
+            throws IOException {
+        if (!set.isEmpty()) {
+            throw new IllegalArgumentException("Set is not empty");
+        }
+        Files.createDirectories(dir);
+        final Path snapshot = dir.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            load(set, MappedSortedSet.open(snapshot, codec));
+        }
+        final FileChannel log = FileChannel.open(dir.resolve(LOG), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long end = replay(set, log, codec);
+            if (end < log.size()) {
+                //хвост, оборванный при сбое
+                log.truncate(end);
+                log.force(false);
+            }
+            log.position(end);
+            return new DurableSet<>(set, dir, codec, groupCommit, checkpointSize, log);
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    private static <E extends Comparable<E>> void load(ISet<E> set, MappedSortedSet<E> snapshot) {
+        if (set instanceof ISortedSet) {
+            ((ISortedSet<E>) set).addAllSorted(snapshot.iterator(), snapshot.size());
+        } else {
+            for (E value : snapshot) {
+                set.add(value);
+            }
+        }
+    }
+
+    /**
+     * Applies the records of the log to the set.
+     *
+     * @return offset of the end of the last whole record
+     */
+    private static <E extends Comparable<E>> long replay(ISet<E> set, FileChannel log, Codec<E> codec)
+            throws IOException {
+        final long size = log.size();
+        final CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long position = 0; //начало buffer в файле
+        while (true) {
+            buffer.clear();
+            while (buffer.hasRemaining() && log.read(buffer, position + buffer.position()) > 0) {
+                //дочитываем буфер
+            }
+            buffer.flip();
+            int offset = 0;
+            int length = 0;
+            while (buffer.limit() - offset >= RECORD_HEADER) {
+                length = buffer.getInt(offset);
+                final byte op = buffer.get(offset + Integer.BYTES * 2);
+                if (length < 0 || op != ADD && op != REMOVE
+                        || position + offset + RECORD_HEADER + (long) length > size) {
+                    //испорченная или оборванная запись
+                    return position + offset;
+                }
+                if (buffer.limit() - offset - RECORD_HEADER < length) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.array(), offset + Integer.BYTES * 2, length + 1);
+                if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                    return position + offset;
+                }
+                final E value = codec.decode(buffer, offset + RECORD_HEADER, length);
+                if (op == ADD) {
+                    set.add(value);
+                } else {
+                    set.remove(value);
+                }
+                offset += RECORD_HEADER + length;
+            }
+            if (offset == 0) {
+                if (buffer.limit() < RECORD_HEADER) {
+                    //конец лога или оборванный заголовок
+                    return position;
+                }
+                //запись длиннее буфера
+                buffer = ByteBuffer.allocate(RECORD_HEADER + length);
+            }
+            position += offset;
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return set.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return set.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(E value) {
+        lock.lock();
+        try {
+            return set.contains(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException if the log can't be written, then the element
+     *                              stays in the set, but may be lost on restart
+     */
+    @Override
+    public boolean add(E value) {
+        return update(ADD, value);
+    }
+
+    /**
+     * @throws UncheckedIOException if the log can't be written, then the element
+     *                              stays removed, but may come back on restart
+     */
+    @Override
+    public boolean remove(E value) {
+        return update(REMOVE, value);
+    }
+
+    /**
+     * Adds the values and forces the log once for all of them.
+     *
+     * @throws NullPointerException if a value is null, then nothing is added
+     */
+    @Override
+    public boolean addAll(E[] keys) {
+        for (E value : keys) {
+            if (value == null) {
+                throw new NullPointerException("Value is null");
+            }
+        }
+        lock.lock();
+        try {
+            checkFailure();
+            boolean changed = false;
+            for (E value : keys) {
+                if (set.add(value)) {
+                    append(ADD, value);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                commit(appended);
+                checkpointIfLong();
+            }
+            return changed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        set.setMetrics(metrics);
+    }
+
+    /**
+     * @return the error of the last checkpoint started by an update, null if it succeeded
+     *         or a checkpoint succeeded since
+     */
+    public IOException checkpointFailure() {
+        lock.lock();
+        try {
+            return checkpointFailure;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the set and truncates the log.
+     */
+    public void checkpoint() throws IOException {
+        lock.lock();
+        try {
+            writeCheckpoint();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces the buffered records and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (failure == null && log.isOpen()) {
+                commit(appended);
+            }
+            log.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean update(byte op, E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        lock.lock();
+        try {
+            checkFailure();
+            if (!(op == ADD ? set.add(value) : set.remove(value))) {
+                return false;
+            }
+            append(op, value);
+            commit(appended);
+            checkpointIfLong();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called with the lock held after a durable update. Its error is only
+     * recorded: the update has succeeded anyway.
+     */
+    private void checkpointIfLong() {
+        if (appended - truncated >= checkpointSize) {
+            try {
+                writeCheckpoint();
+            } catch (IOException e) {
+                //следующая попытка - когда лог вырастет ещё раз
+                truncated = appended;
+                checkpointFailure = e;
+            }
+        }
+    }
+
+    private void append(byte op, E value) {
+        final byte[] key = codec.encode(value);
+        final int length = RECORD_HEADER + key.length;
+        if (pending.remaining() < length) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + length));
+            pending.flip();
+            pending = grown.put(pending);
+        }
+        crc.reset();
+        crc.update(op);
+        crc.update(key);
+        pending.putInt(key.length).putInt((int) crc.getValue()).put(op).put(key);
+        appended += length;
+    }
+
+    /**
+     * Waits until the log is forced up to {@code lsn} bytes appended since
+     * open. The first waiter that finds no write in progress writes the whole
+     * buffer and forces it, releasing the lock meanwhile unless group commit is off.
+     */
+    private void commit(long lsn) {
+        while (durable < lsn) {
+            checkFailure();
+            if (flushing) {
+                flushed.awaitUninterruptibly();
+                continue;
+            }
+            flushing = true;
+            final ByteBuffer batch = pending;
+            final long end = appended;
+            pending = spare;
+            spare = null;
+            IOException error = null;
+            if (groupCommit) {
+                lock.unlock();
+            }
+            try {
+                write(batch);
+                log.force(false);
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                if (groupCommit) {
+                    lock.lock();
+                }
+            }
+            batch.clear();
+            spare = batch;
+            flushing = false;
+            if (error != null) {
+                failure = error;
+            } else {
+                durable = end;
+            }
+            flushed.signalAll();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Called with the lock held, so no records are appended meanwhile.
+     */
+    private void writeCheckpoint() throws IOException {
+        commit(appended);
+        //commit отпускает блокировку, за это время другой писатель мог начать запись в лог
+        while (flushing) {
+            flushed.awaitUninterruptibly();
+        }
+        checkFailure();
+        //снимок пишется рядом и атомарно переименовывается
+        MappedSortedSet.write(scan(), dir.resolve(SNAPSHOT), codec);
+        forceDirectory();
+        //если упадём здесь, лог повторно применится к новому снимку, это безопасно
+        try {
+            log.truncate(0);
+            log.position(0);
+            log.force(true);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        truncated = appended;
+        checkpointFailure = null;
+    }
+
+    /**
+     * Called with the lock held and no write of the log in progress. Records
+     * still in {@code pending} are left out of the rebuilt set, but they are
+     * written after the truncation and replayed on top of the snapshot.
+     *
+     * @return the set itself if it is sorted, otherwise its contents rebuilt
+     * in order from the snapshot and the log
+     */
+    private ISortedSet<E> scan() throws IOException {
+        if (set instanceof ISortedSet) {
+            return (ISortedSet<E>) set;
+        }
+        final ISortedSet<E> res = new AVLTree<>();
+        final Path snapshot = dir.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            load(res, MappedSortedSet.open(snapshot, codec));
+        }
+        replay(res, log, codec);
+        return res;
+    }
+
+    private void write(ByteBuffer batch) throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            log.write(batch);
+        }
+    }
+
+    /**
+     * Makes the rename of the snapshot durable. Not every platform can open
+     * a directory, there the rename is left to the file system.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //например, Windows
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Log failed, set is read-only", failure);
+        }
+    }
+}
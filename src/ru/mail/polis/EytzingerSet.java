@@ -0,0 +1,363 @@
+package ru.mail.polis;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * Immutable sorted set, the result of {@link ISortedSet#freeze()}. The keys
+ * form an implicit complete search tree stored in breadth-first (Eytzinger)
+ * order: the root is {@code keys[1]} and the children of {@code keys[k]} are
+ * {@code keys[2k]} and {@code keys[2k + 1]}. The top levels of the tree share
+ * a few cache lines, and navigation descends with a fixed number of steps
+ * and no data-dependent exit, so the loop body compiles to a conditional
+ * move; {@code contains} only adds an exit at an equal key. Updates throw
+ * {@link UnsupportedOperationException}.
+ */
+public final class EytzingerSet<E extends Comparable<E>> implements INavigableSet<E> {
+
+    private final Comparator<E> comparator;
+    private final Object[] keys; //keys[0] не используется
+    private final int size;
+
+    /**
+     * @param set        set to copy, iterated once in ascending order
+     * @param comparator comparator of the set, null for natural ordering
+     */
+    EytzingerSet(ISortedSet<E> set, Comparator<E> comparator) {
+        this.comparator = comparator;
+        List<E> sorted = new ArrayList<>(set.size());
+        for (Iterator<E> it = set.iterator(); it.hasNext(); ) {
+            sorted.add(it.next());
+        }
+        size = sorted.size();
+        keys = new Object[size + 1];
+        fill(sorted.toArray(), 0, 1);
+    }
+
+    /**
+     * Places the sorted elements starting from {@code i} into the subtree
+     * rooted at {@code k} by an in-order walk.
+     *
+     * @return index of the first element not placed
+     */
+    private int fill(Object[] sorted, int i, int k) {
+        if (k <= size) {
+            i = fill(sorted, i, 2 * k);
+            keys[k] = sorted[i++];
+            i = fill(sorted, i, 2 * k + 1);
+        }
+        return i;
+    }
+
+    @Override
+    public E first() {
+        if (size == 0) {
+            throw new NoSuchElementException("Set is empty, no first element");
+        }
+        return key(firstIndex());
+    }
+
+    @Override
+    public E last() {
+        if (size == 0) {
+            throw new NoSuchElementException("Set is empty, no last element");
+        }
+        return key(lastIndex());
+    }
+
+    @Override
+    public List<E> inorderTraverse() {
+        List<E> res = new ArrayList<>(size);
+        for (int k = firstIndex(); k != 0; k = successor(k)) {
+            res.add(key(k));
+        }
+        return res;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        //выход по равенству почти всегда не берётся и хорошо предсказывается,
+        //а до листа не приходится спускаться
+        final int n = size;
+        int k = 1;
+        while (k <= n) {
+            final int cmp = compare(key(k), value);
+            if (cmp == 0) {
+                return true;
+            }
+            k = 2 * k + (cmp < 0 ? 1 : 0);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(E value) {
+        throw new UnsupportedOperationException("Set is frozen");
+    }
+
+    @Override
+    public boolean remove(E value) {
+        throw new UnsupportedOperationException("Set is frozen");
+    }
+
+    @Override
+    public E pollFirst() {
+        throw new UnsupportedOperationException("Set is frozen");
+    }
+
+    @Override
+    public E pollLast() {
+        throw new UnsupportedOperationException("Set is frozen");
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return this;
+    }
+
+    @Override
+    public E floor(E value) {
+        return keyOrNull(floorIndex(value, true));
+    }
+
+    @Override
+    public E ceiling(E value) {
+        return keyOrNull(ceilingIndex(value, true));
+    }
+
+    @Override
+    public E higher(E value) {
+        return keyOrNull(ceilingIndex(value, false));
+    }
+
+    @Override
+    public E lower(E value) {
+        return keyOrNull(floorIndex(value, false));
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(firstIndex(), null, false, false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new Itr(lastIndex(), null, false, true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED | Spliterator.DISTINCT
+                | Spliterator.NONNULL | Spliterator.IMMUTABLE | (comparator == null ? Spliterator.SORTED : 0));
+    }
+
+    @Override
+    public INavigableSet<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (compare(from, to) > 0) {
+            throw new IllegalArgumentException("from > to");
+        }
+        return new View(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public INavigableSet<E> headSet(E to, boolean inclusive) {
+        if (to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(null, false, to, inclusive);
+    }
+
+    @Override
+    public INavigableSet<E> tailSet(E from, boolean inclusive) {
+        if (from == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(from, inclusive, null, false);
+    }
+
+    /**
+     * Branchless lower bound: descends to a leaf going right past every key
+     * less than {@code value} (less than or equal, if {@code bias} is 1),
+     * then cancels the trailing right turns and the last left one, which
+     * leads back to the answer.
+     *
+     * @return index of the least key greater than or equal to {@code value}
+     * (strictly greater, if {@code bias} is 1), 0 if there is none
+     */
+    private int search(E value, int bias) {
+        final int n = size;
+        int k = 1;
+        while (k <= n) {
+            k = 2 * k + (compare(key(k), value) < bias ? 1 : 0);
+        }
+        return k >>> Integer.numberOfTrailingZeros(~k) + 1;
+    }
+
+    private int ceilingIndex(E value, boolean inclusive) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return search(value, inclusive ? 0 : 1);
+    }
+
+    private int floorIndex(E value, boolean inclusive) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        //наибольший не больше value предшествует наименьшему большему
+        final int k = search(value, inclusive ? 1 : 0);
+        return k == 0 ? lastIndex() : predecessor(k);
+    }
+
+    private int firstIndex() {
+        if (size == 0) {
+            return 0;
+        }
+        int k = 1;
+        while (2 * k <= size) {
+            k = 2 * k;
+        }
+        return k;
+    }
+
+    private int lastIndex() {
+        if (size == 0) {
+            return 0;
+        }
+        int k = 1;
+        while (2 * k + 1 <= size) {
+            k = 2 * k + 1;
+        }
+        return k;
+    }
+
+    /**
+     * @return index of the next key in ascending order, 0 after the last one
+     */
+    private int successor(int k) {
+        if (2 * k + 1 <= size) {
+            //самый левый в правом поддереве
+            k = 2 * k + 1;
+            while (2 * k <= size) {
+                k = 2 * k;
+            }
+            return k;
+        }
+        //поднимаемся, пока идём из правого ребёнка, и ещё раз
+        return k >>> Integer.numberOfTrailingZeros(~k) + 1;
+    }
+
+    /**
+     * @return index of the previous key in ascending order, 0 before the first one
+     */
+    private int predecessor(int k) {
+        if (2 * k <= size) {
+            k = 2 * k;
+            while (2 * k + 1 <= size) {
+                k = 2 * k + 1;
+            }
+            return k;
+        }
+        return k >>> Integer.numberOfTrailingZeros(k) + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E key(int k) {
+        return (E) keys[k];
+    }
+
+    private E keyOrNull(int k) {
+        return k == 0 ? null : key(k);
+    }
+
+    private int compare(E v1, E v2) {
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    /**
+     * Walks the implicit tree from key to key until the {@code to} bound.
+     */
+    private class Itr implements Iterator<E> {
+        private final E to;
+        private final boolean toInclusive;
+        private final boolean descending;
+        private int next;
+
+        Itr(int next, E to, boolean toInclusive, boolean descending) {
+            this.to = to;
+            this.toInclusive = toInclusive;
+            this.descending = descending;
+            this.next = next;
+            checkBound();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != 0;
+        }
+
+        @Override
+        public E next() {
+            if (next == 0) {
+                throw new NoSuchElementException();
+            }
+            final E res = key(next);
+            next = descending ? predecessor(next) : successor(next);
+            checkBound();
+            return res;
+        }
+
+        private void checkBound() {
+            if (next != 0 && to != null) {
+                final int cmp = descending ? compare(to, key(next)) : compare(key(next), to);
+                if (cmp > 0 || cmp == 0 && !toInclusive) {
+                    next = 0;
+                }
+            }
+        }
+    }
+
+    private class View extends SubSet<E> {
+
+        View(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            super(EytzingerSet.this, comparator, lo, loInclusive, hi, hiInclusive);
+        }
+
+        @Override
+        Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending) {
+            int start;
+            if (descending) {
+                start = from == null ? lastIndex() : floorIndex(from, fromInclusive);
+            } else {
+                start = from == null ? firstIndex() : ceilingIndex(from, fromInclusive);
+            }
+            return new Itr(start, to, toInclusive, descending);
+        }
+
+        @Override
+        SubSet<E> create(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            return new View(lo, loInclusive, hi, hiInclusive);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package ru.mail.polis;
+
+import java.util.Arrays;
+
+/**
+ * Decorator that answers most {@code contains} calls for absent elements
+ * without touching the set: a {@link CuckooFilter} of the hash codes of the
+ * elements is kept in sync on {@code add} and {@code remove}, and a lookup
+ * goes to the set only if the filter passes it, which for an absent element
+ * happens with about the configured false-positive rate. A rejected lookup
+ * reads two words, usually from two cache lines, instead of walking a
+ * root-to-leaf path, so it pays off for trees rather than for hash tables,
+ * which answer most misses from one or two lines themselves.
+ * <p>
+ * Equal elements must have equal hash codes, also under a comparator.
+ * The set must be modified only through the decorator. When the filter is
+ * full, e.g. the set grew far beyond the expected size, a filter twice as
+ * large with half the false-positive rate is chained for the new elements,
+ * so the set needn't be iterated and the total rate stays below twice the
+ * configured one. A lookup queries all the filters; a removal clears the
+ * fingerprint only if a single filter has it, otherwise it can't tell whose
+ * copy it is and leaves it. The filters together hold at most two
+ * fingerprints per element of the set: if a chained filter would exceed
+ * that, the keys collide by design rather than by chance, and the decorator
+ * stops filtering and passes every call to the set. Not thread-safe.
+ */
+public class FilteredSet<E extends Comparable<E>> implements ISet<E> {
+
+    private final ISet<E> set;
+    private CuckooFilter[] filters; //последний - тот, в который добавляются элементы; null, если фильтрация брошена
+    private long lookups;
+    private long filtered; //отсеяно фильтром
+    private long falsePositives; //пропущено фильтром, но не найдено
+
+    /**
+     * @param set               set to decorate, empty unless it is an {@link ISortedSet}
+     * @param expectedSize      number of elements the filter is sized for
+     * @param falsePositiveRate target share of lookups of absent elements that reach the set
+     * @throws IllegalArgumentException if the set can't be loaded into the filter
+     *                                  or the arguments are out of range
+     */
+    public FilteredSet(ISet<E> set, int expectedSize, double falsePositiveRate) {
+        if (expectedSize <= 0) {
+            throw new IllegalArgumentException("Expected size is not positive: " + expectedSize);
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False-positive rate is not in (0, 1): " + falsePositiveRate);
+        }
+        if (!set.isEmpty() && !(set instanceof ISortedSet)) {
+            throw new IllegalArgumentException("Set can't be loaded into the filter");
+        }
+        this.set = set;
+        this.filters = new CuckooFilter[]{new CuckooFilter(Math.max(expectedSize, set.size()), falsePositiveRate)};
+        if (!set.isEmpty()) {
+            for (E value : (ISortedSet<E>) set) {
+                addHash(hash(value));
+                if (filters == null) {
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return set.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return set.isEmpty();
+    }
+
+    @Override
+    public boolean contains(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        lookups++;
+        if (filters != null && count(hash(value), 1) == 0) {
+            filtered++;
+            return false;
+        }
+        final boolean res = set.contains(value);
+        if (!res) {
+            falsePositives++;
+        }
+        return res;
+    }
+
+    @Override
+    public boolean add(E value) {
+        if (!set.add(value)) {
+            return false;
+        }
+        if (filters != null) {
+            addHash(hash(value));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(E value) {
+        if (!set.remove(value)) {
+            return false;
+        }
+        if (filters == null) {
+            return true;
+        }
+        final long hash = hash(value);
+        if (count(hash, 2) == 1) {
+            for (CuckooFilter filter : filters) {
+                if (filter.remove(hash)) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        set.setMetrics(metrics);
+    }
+
+    /**
+     * @return number of {@code contains} calls
+     */
+    public long lookups() {
+        return lookups;
+    }
+
+    /**
+     * @return number of lookups answered by the filter without the set
+     */
+    public long filtered() {
+        return filtered;
+    }
+
+    /**
+     * @return number of lookups passed by the filter for absent elements
+     */
+    public long falsePositives() {
+        return falsePositives;
+    }
+
+    /**
+     * @return share of lookups of absent elements answered by the filter, NaN if there were none
+     */
+    public double filterHitRatio() {
+        return (double) filtered / (filtered + falsePositives);
+    }
+
+    /**
+     * @return number of chained filters, 1 until the set outgrows the expected size,
+     * 0 if the filters overflowed with colliding keys and filtering is off
+     */
+    public int filterCount() {
+        return filters == null ? 0 : filters.length;
+    }
+
+    public void resetCounters() {
+        lookups = 0;
+        filtered = 0;
+        falsePositives = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FilteredSet{lookups=" + lookups
+                + ", filtered=" + filtered
+                + ", falsePositives=" + falsePositives
+                + ", filterHitRatio=" + filterHitRatio()
+                + ", filterCount=" + filterCount()
+                + '}';
+    }
+
+    private void addHash(long hash) {
+        CuckooFilter last = filters[filters.length - 1];
+        if (last.add(hash)) {
+            return;
+        }
+        long total = 0;
+        for (CuckooFilter filter : filters) {
+            total += filter.capacity();
+        }
+        //не больше двух отпечатков на элемент, иначе коллизии раздували бы фильтры без предела
+        final long room = 2L * set.size() - total;
+        if (room <= 0) {
+            filters = null;
+            return;
+        }
+        //следующий фильтр вдвое точнее, так что сумма долей ложных срабатываний ограничена
+        last = new CuckooFilter((int) Math.min(Math.min(2L * last.capacity(), room), Integer.MAX_VALUE),
+                last.falsePositiveRate() / 2);
+        filters = Arrays.copyOf(filters, filters.length + 1);
+        filters[filters.length - 1] = last;
+        if (!last.add(hash)) {
+            filters = null;
+        }
+    }
+
+    /**
+     * @return number of filters that might contain the hash, counted up to the limit
+     */
+    private int count(long hash, int limit) {
+        int res = 0;
+        for (int i = filters.length - 1; i >= 0 && res < limit; i--) {
+            if (filters[i].mightContain(hash)) {
+                res++;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * SplitMix64 finalizer of the hash code: the filter takes the bucket from
+     * the low bits and the fingerprint from the high ones.
+     */
+    private static long hash(Object value) {
+        long h = value.hashCode() * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.mail.polis;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+
+/**
+ * {@link FilteredSet} over a sorted set: lookups and updates go through the
+ * filter, ordered access goes straight to the set. Elements removed through
+ * an iterator leave their fingerprints in the filter, which only makes
+ * lookups of them reach the set.
+ */
+public class FilteredSortedSet<E extends Comparable<E>> extends FilteredSet<E> implements ISortedSet<E> {
+
+    private final ISortedSet<E> set;
+
+    /**
+     * @param set               set to decorate, its elements are loaded into the filter
+     * @param expectedSize      number of elements the filter is sized for
+     * @param falsePositiveRate target share of lookups of absent elements that reach the set
+     */
+    public FilteredSortedSet(ISortedSet<E> set, int expectedSize, double falsePositiveRate) {
+        super(set, expectedSize, falsePositiveRate);
+        this.set = set;
+    }
+
+    @Override
+    public E first() {
+        return set.first();
+    }
+
+    @Override
+    public E last() {
+        return set.last();
+    }
+
+    @Override
+    public List<E> inorderTraverse() {
+        return set.inorderTraverse();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return set.iterator();
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return set.descendingIterator();
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return set.spliterator();
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return set.freeze();
+    }
+}
@@ -0,0 +1,103 @@
+package ru.mail.polis;
+
+public interface INavigableSet<E extends Comparable<E>> extends ISortedSet<E> {
+
+    /**
+     * @param value the value to match
+     * @return the greatest element in this set less than or equal to the given one,
+     * or null if there is no such element
+     * @throws NullPointerException if the specified element is null
+     */
+    E floor(E value);
+
+    /**
+     * @param value the value to match
+     * @return the least element in this set greater than or equal to the given one,
+     * or null if there is no such element
+     * @throws NullPointerException if the specified element is null
+     */
+    E ceiling(E value);
+
+    /**
+     * @param value the value to match
+     * @return the least element in this set strictly greater than the given one,
+     * or null if there is no such element
+     * @throws NullPointerException if the specified element is null
+     */
+    E higher(E value);
+
+    /**
+     * @param value the value to match
+     * @return the greatest element in this set strictly less than the given one,
+     * or null if there is no such element
+     * @throws NullPointerException if the specified element is null
+     */
+    E lower(E value);
+
+    /**
+     * Retrieves and removes the first (lowest) element.
+     *
+     * @return the first element, or null if this set is empty
+     */
+    E pollFirst();
+
+    /**
+     * Retrieves and removes the last (highest) element.
+     *
+     * @return the last element, or null if this set is empty
+     */
+    E pollLast();
+
+    /**
+     * Returns a view of the portion of this set whose elements range from
+     * {@code from} to {@code to}. The view is backed by this set, so changes
+     * are reflected in both; adding an element out of the range to the view
+     * throws {@link IllegalArgumentException}.
+     *
+     * @param from          low endpoint of the returned set
+     * @param fromInclusive true if the low endpoint is to be included
+     * @param to            high endpoint of the returned set
+     * @param toInclusive   true if the high endpoint is to be included
+     * @return a view of the portion of this set in the range
+     * @throws NullPointerException     if any of the endpoints is null
+     * @throws IllegalArgumentException if {@code from} is greater than {@code to},
+     *                                  or an endpoint lies outside the range of this view
+     */
+    INavigableSet<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive);
+
+    /**
+     * @return a view of the elements of this set in range [from, to)
+     * @see #subSet(Comparable, boolean, Comparable, boolean)
+     */
+    default INavigableSet<E> subSet(E from, E to) {
+        return subSet(from, true, to, false);
+    }
+
+    /**
+     * @return a view of the elements of this set less than (or equal to,
+     * if {@code inclusive} is true) {@code to}
+     * @see #subSet(Comparable, boolean, Comparable, boolean)
+     */
+    INavigableSet<E> headSet(E to, boolean inclusive);
+
+    /**
+     * @return a view of the elements of this set strictly less than {@code to}
+     */
+    default INavigableSet<E> headSet(E to) {
+        return headSet(to, false);
+    }
+
+    /**
+     * @return a view of the elements of this set greater than (or equal to,
+     * if {@code inclusive} is true) {@code from}
+     * @see #subSet(Comparable, boolean, Comparable, boolean)
+     */
+    INavigableSet<E> tailSet(E from, boolean inclusive);
+
+    /**
+     * @return a view of the elements of this set greater than or equal to {@code from}
+     */
+    default INavigableSet<E> tailSet(E from) {
+        return tailSet(from, true);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.mail.polis;
+
+public interface IOrderStatisticSet<E extends Comparable<E>> extends ISortedSet<E> {
+
+    /**
+     * @param value element whose rank is to be found, not necessarily present in this set
+     * @return the number of elements in this set strictly less than the specified element
+     * @throws NullPointerException if the specified element is null
+     */
+    int rank(E value);
+
+    /**
+     * @param index zero-based position of the element in sorting ordering
+     * @return the element with exactly {@code index} smaller elements in this set
+     * @throws IndexOutOfBoundsException if index is negative or not less than {@link #size()}
+     */
+    E select(int index);
+
+    /**
+     * @param from low endpoint (inclusive)
+     * @param to   high endpoint (exclusive)
+     * @return the number of elements of this set in range [from, to),
+     * 0 if {@code from} is not less than {@code to}
+     * @throws NullPointerException if any of the specified elements is null
+     */
+    int countInRange(E from, E to);
+}
@@ -1,5 +1,7 @@
 package ru.mail.polis;
 
+import java.util.BitSet;
+
 public interface ISet<E extends Comparable<E>> {
 
     /**
@@ -36,4 +38,48 @@ public interface ISet<E extends Comparable<E>> {
      * @throws NullPointerException if the specified element is null
      */
     boolean remove(E value);
+
+    /**
+     * Looks up a batch of values, e.g. the keys of one request. Hash tables
+     * and trees process the batch in groups, one stage of all lookups of a
+     * group at a time, so the cache misses of different keys overlap instead
+     * of stalling one after another.
+     *
+     * @param keys values whose presence is to be tested
+     * @param out  bit {@code i} is set if {@code keys[i]} is in this set and
+     *             cleared otherwise; bits from {@code keys.length} are not changed
+     * @throws NullPointerException if any of the values is null
+     */
+    default void containsAll(E[] keys, BitSet out) {
+        for (int i = 0; i < keys.length; i++) {
+            out.set(i, contains(keys[i]));
+        }
+    }
+
+    /**
+     * Adds a batch of values; implementations with a batched
+     * {@link #containsAll} look them all up first and then add the absent
+     * ones, whose buckets or search paths are already in cache.
+     *
+     * @param keys values to be added to this set
+     * @return true if this set changed
+     * @throws NullPointerException if any of the values is null
+     */
+    default boolean addAll(E[] keys) {
+        boolean changed = false;
+        for (E value : keys) {
+            changed |= add(value);
+        }
+        return changed;
+    }
+
+    /**
+     * Attaches a receiver of internal events, such as probe lengths and
+     * rotations. Events are reported only when {@link SetMetrics#ENABLED};
+     * implementations without instrumentation ignore the receiver.
+     *
+     * @param metrics the receiver, or null to detach
+     */
+    default void setMetrics(SetMetrics metrics) {
+    }
 }
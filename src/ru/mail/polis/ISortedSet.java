@@ -1,8 +1,12 @@
 package ru.mail.polis;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public interface ISortedSet<E extends Comparable<E>> extends ISet<E> {
+public interface ISortedSet<E extends Comparable<E>> extends ISet<E>, Iterable<E> {
 
     /**
      * @return the first (lowest) element currently in this set
@@ -20,4 +24,62 @@ public interface ISortedSet<E extends Comparable<E>> extends ISet<E> {
      * @return list of element in sorting ordering
      */
     List<E> inorderTraverse();
+
+    /**
+     * Iterates lazily, without copying the set. The set must not be modified
+     * while iterating.
+     *
+     * @return an iterator over the elements in ascending order
+     */
+    @Override
+    Iterator<E> iterator();
+
+    /**
+     * @return an iterator over the elements in descending order
+     */
+    Iterator<E> descendingIterator();
+
+    /**
+     * @return an {@link Spliterator#ORDERED}, {@link Spliterator#SORTED} spliterator
+     * over the elements in ascending order
+     */
+    @Override
+    Spliterator<E> spliterator();
+
+    /**
+     * Copies the set into an immutable {@link EytzingerSet}, which answers
+     * lookups faster than a tree when the set no longer changes.
+     *
+     * @return an immutable set of the elements currently in this set, in the same order
+     */
+    INavigableSet<E> freeze();
+
+    /**
+     * Adds {@code size} elements taken from the iterator, which must return
+     * them in strictly ascending order of this set. Implementations may
+     * merge the batch into the set faster than adding one by one; the
+     * default one just adds them one by one.
+     *
+     * @param sorted iterator over the elements to be added
+     * @param size   number of elements to take from the iterator
+     * @return true if this set changed
+     * @throws IllegalArgumentException if the implementation relies on the order
+     *                                  and the elements are not strictly ascending
+     * @throws NullPointerException     if any of the elements is null
+     */
+    default boolean addAllSorted(Iterator<? extends E> sorted, int size) {
+        boolean changed = false;
+        for (int i = 0; i < size; i++) {
+            changed |= add(sorted.next());
+        }
+        return changed;
+    }
+
+    /**
+     * @return a sequential stream over the elements in ascending order,
+     * call {@code parallel()} on it to split the traversal by subtrees
+     */
+    default Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
 }
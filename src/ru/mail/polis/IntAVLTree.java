@@ -0,0 +1,301 @@
+package ru.mail.polis;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * AVL tree over parallel arrays: node {@code i} is {@code keys[i]},
+ * {@code left[i]}, {@code right[i]} and {@code height[i]}, index 0 is the null node.
+ */
+public class IntAVLTree implements IntSortedSet {
+
+    private static final int NIL = 0;
+    private static final int MAX_HEIGHT = 64; //высота AVL-дерева не больше 1.45 * log2(n)
+
+    private final int INITIAL_CAPACITY = 16;
+    private int[] keys;
+    private int[] left;
+    private int[] right;
+    private byte[] height;
+    private int root = NIL;
+    private int size;
+    private int next = 1; //первый ни разу не использованный узел
+    private int free = NIL; //список свободных узлов, связан через left
+    private final int[] path = new int[MAX_HEIGHT];
+    private SetMetrics metrics;
+
+    public IntAVLTree() {
+        keys = new int[INITIAL_CAPACITY];
+        left = new int[INITIAL_CAPACITY];
+        right = new int[INITIAL_CAPACITY];
+        height = new byte[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public int first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Tree is empty, no first element");
+        }
+        int curr = root;
+        while (left[curr] != NIL) {
+            curr = left[curr];
+        }
+        return keys[curr];
+    }
+
+    @Override
+    public int last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Tree is empty, no last element");
+        }
+        int curr = root;
+        while (right[curr] != NIL) {
+            curr = right[curr];
+        }
+        return keys[curr];
+    }
+
+    @Override
+    public int[] inorderTraverse() {
+        int[] res = new int[size];
+        int[] stack = new int[MAX_HEIGHT];
+        int depth = 0;
+        int count = 0;
+        int curr = root;
+        while (curr != NIL || depth > 0) {
+            while (curr != NIL) {
+                stack[depth++] = curr;
+                curr = left[curr];
+            }
+            curr = stack[--depth];
+            res[count++] = keys[curr];
+            curr = right[curr];
+        }
+        return res;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    @Override
+    public boolean contains(int value) {
+        int depth = 0;
+        int curr = root;
+        while (curr != NIL) {
+            depth++;
+            final int key = keys[curr];
+            if (value < key) {
+                curr = left[curr];
+            } else if (value > key) {
+                curr = right[curr];
+            } else {
+                return probed(depth, true);
+            }
+        }
+        return probed(depth, false);
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean add(int value) {
+        int depth = 0;
+        int curr = root;
+        while (curr != NIL) {
+            path[depth++] = curr;
+            final int key = keys[curr];
+            if (value < key) {
+                curr = left[curr];
+            } else if (value > key) {
+                curr = right[curr];
+            } else {
+                return false;
+            }
+        }
+        final int node = newNode(value);
+        if (depth == 0) {
+            root = node;
+        } else {
+            final int parent = path[depth - 1];
+            if (value < keys[parent]) {
+                left[parent] = node;
+            } else {
+                right[parent] = node;
+            }
+        }
+        size++;
+        rebalance(depth);
+        return true;
+    }
+
+    @Override
+    public boolean remove(int value) {
+        int depth = 0;
+        int curr = root;
+        while (curr != NIL) {
+            final int key = keys[curr];
+            if (value == key) {
+                break;
+            }
+            path[depth++] = curr;
+            curr = value < key ? left[curr] : right[curr];
+        }
+        if (curr == NIL) {
+            return false;
+        }
+        if (left[curr] != NIL && right[curr] != NIL) {
+            //заменяем ключ наименьшим из больших и удаляем его узел
+            path[depth++] = curr;
+            int min = right[curr];
+            while (left[min] != NIL) {
+                path[depth++] = min;
+                min = left[min];
+            }
+            keys[curr] = keys[min];
+            curr = min;
+        }
+        final int child = left[curr] != NIL ? left[curr] : right[curr];
+        replaceChild(depth, curr, child);
+        freeNode(curr);
+        size--;
+        rebalance(depth);
+        return true;
+    }
+
+    /**
+     * Rebalances the first {@code depth} nodes of {@link #path} bottom-up and
+     * stops as soon as a subtree keeps its former height.
+     */
+    private void rebalance(int depth) {
+        for (int i = depth - 1; i >= 0; i--) {
+            final int node = path[i];
+            final int oldHeight = height[node];
+            final int balanced = balance(node);
+            if (balanced != node) {
+                replaceChild(i, node, balanced);
+            }
+            if (height[balanced] == oldHeight) {
+                break;
+            }
+        }
+    }
+
+    private void replaceChild(int depth, int node, int child) {
+        if (depth == 0) {
+            root = child;
+        } else {
+            final int parent = path[depth - 1];
+            if (left[parent] == node) {
+                left[parent] = child;
+            } else {
+                right[parent] = child;
+            }
+        }
+    }
+
+    private int newNode(int value) {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = left[node];
+        } else {
+            if (next == keys.length) {
+                grow();
+            }
+            node = next++;
+        }
+        keys[node] = value;
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 1;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        left[node] = free;
+        right[node] = NIL;
+        height[node] = 0;
+        free = node;
+    }
+
+    private void grow() {
+        final long start = SetMetrics.ENABLED ? System.nanoTime() : 0;
+        final int capacity = keys.length << 1;
+        keys = Arrays.copyOf(keys, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.resized(capacity >> 1, capacity, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Reports the length of the search path of a lookup.
+     */
+    private boolean probed(int length, boolean found) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(length);
+        }
+        return found;
+    }
+
+    private int balanceFactor(int node) {
+        return height[right[node]] - height[left[node]];
+    }
+
+    private void fixHeight(int node) {
+        height[node] = (byte) (Math.max(height[left[node]], height[right[node]]) + 1);
+    }
+
+    private int leftRotate(int x) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.rotated();
+        }
+        int y = right[x];
+        right[x] = left[y];
+        left[y] = x;
+        fixHeight(x);
+        fixHeight(y);
+        return y;
+    }
+
+    private int rightRotate(int y) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.rotated();
+        }
+        int x = left[y];
+        left[y] = right[x];
+        right[x] = y;
+        fixHeight(y);
+        fixHeight(x);
+        return x;
+    }
+
+    private int balance(int node) {
+        fixHeight(node);
+        if (balanceFactor(node) > 1) {
+            if (balanceFactor(right[node]) < 0) {
+                right[node] = rightRotate(right[node]);
+            }
+            return leftRotate(node);
+        }
+        if (balanceFactor(node) < -1) {
+            if (balanceFactor(left[node]) > 0) {
+                left[node] = leftRotate(left[node]);
+            }
+            return rightRotate(node);
+        }
+        return node;
+    }
+}
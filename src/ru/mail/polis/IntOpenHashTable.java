@@ -0,0 +1,139 @@
+package ru.mail.polis;
+
+public class IntOpenHashTable implements IntSet {
+
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+    private static final byte DELETED = 2;
+
+    private final int INITIAL_CAPACITY = 8;
+    private int[] keys;
+    private byte[] states;
+    private int size;
+    private int deleted;
+    private SetMetrics metrics;
+
+    public IntOpenHashTable() {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.states = new byte[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    @Override
+    public boolean add(int value) {
+        final int h = hash(value);
+        final int mask = keys.length - 1;
+        final int step = step(h, mask);
+        int idx = h & mask;
+        int free = -1;
+        byte state;
+        while ((state = states[idx]) != EMPTY) {
+            if (state == DELETED) {
+                if (free < 0) {
+                    free = idx;
+                }
+            } else if (keys[idx] == value) {
+                return false;
+            }
+            idx = (idx + step) & mask;
+        }
+        if (free >= 0) {
+            idx = free;
+            deleted--;
+        }
+        keys[idx] = value;
+        states[idx] = FULL;
+        size++;
+        resize();
+        return true;
+    }
+
+    @Override
+    public boolean remove(int value) {
+        int idx = indexOf(value);
+        if (idx < 0) {
+            return false;
+        }
+        states[idx] = DELETED;
+        size--;
+        deleted++;
+        return true;
+    }
+
+    private int indexOf(int value) {
+        final int h = hash(value);
+        final int mask = keys.length - 1;
+        final int step = step(h, mask);
+        int idx = h & mask;
+        int probes = 1;
+        byte state;
+        while ((state = states[idx]) != EMPTY) {
+            if (state == FULL && keys[idx] == value) {
+                break;
+            }
+            idx = (idx + step) & mask;
+            probes++;
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(probes);
+        }
+        return state != EMPTY ? idx : -1;
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private static int hash(int value) {
+        final int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int step(int h, int mask) {
+        return (Integer.rotateLeft(h * 0x9E3779B9, 16) & mask) | 1;
+    }
+
+    private void resize() {
+        if ((size + deleted) * 2 < keys.length) {
+            return;
+        }
+        final long start = SetMetrics.ENABLED ? System.nanoTime() : 0;
+        int capacity = size * 4 < keys.length ? keys.length : keys.length << 1;
+        int[] oldKeys = keys;
+        byte[] oldStates = states;
+        keys = new int[capacity];
+        states = new byte[capacity];
+        deleted = 0;
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStates[i] == FULL) {
+                final int h = hash(oldKeys[i]);
+                final int step = step(h, mask);
+                int idx = h & mask;
+                while (states[idx] != EMPTY) {
+                    idx = (idx + step) & mask;
+                }
+                keys[idx] = oldKeys[i];
+                states[idx] = FULL;
+            }
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.resized(oldKeys.length, capacity, System.nanoTime() - start);
+        }
+    }
+}
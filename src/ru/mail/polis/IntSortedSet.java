@@ -0,0 +1,24 @@
+package ru.mail.polis;
+
+/**
+ * {@link ISortedSet} specialized for {@code int} keys.
+ */
+public interface IntSortedSet extends IntSet {
+
+    /**
+     * @return the first (lowest) element currently in this set
+     * @throws java.util.NoSuchElementException if this set is empty
+     */
+    int first();
+
+    /**
+     * @return the last (highest) element currently in this set
+     * @throws java.util.NoSuchElementException if this set is empty
+     */
+    int last();
+
+    /**
+     * @return array of elements in sorting ordering
+     */
+    int[] inorderTraverse();
+}
@@ -0,0 +1,45 @@
+package ru.mail.polis;
+
+/**
+ * {@link ISet} specialized for {@code long} keys, so elements are never boxed.
+ */
+public interface LongSet {
+
+    /**
+     * Returns the number of elements in this set (its cardinality).
+     *
+     * @return the number of elements in this set (its cardinality)
+     */
+    int size();
+
+    /**
+     * @return true if this set contains no elements
+     */
+    boolean isEmpty();
+
+    /**
+     * @param value element whose presence in this set is to be tested
+     * @return true if this set contains the specified element
+     */
+    boolean contains(long value);
+
+    /**
+     * @param value element to be added to this set
+     * @return true if this set did not already contain the specified element
+     */
+    boolean add(long value);
+
+    /**
+     * @param value element to be removed from this set, if present
+     * @return true if this set contained the specified element
+     */
+    boolean remove(long value);
+
+    /**
+     * Attaches a receiver of internal events, see {@link ISet#setMetrics}.
+     *
+     * @param metrics the receiver, or null to detach
+     */
+    default void setMetrics(SetMetrics metrics) {
+    }
+}
@@ -0,0 +1,24 @@
+package ru.mail.polis;
+
+/**
+ * {@link ISortedSet} specialized for {@code long} keys.
+ */
+public interface LongSortedSet extends LongSet {
+
+    /**
+     * @return the first (lowest) element currently in this set
+     * @throws java.util.NoSuchElementException if this set is empty
+     */
+    long first();
+
+    /**
+     * @return the last (highest) element currently in this set
+     * @throws java.util.NoSuchElementException if this set is empty
+     */
+    long last();
+
+    /**
+     * @return array of elements in sorting ordering
+     */
+    long[] inorderTraverse();
+}
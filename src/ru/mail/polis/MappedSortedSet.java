@@ -0,0 +1,552 @@
+package ru.mail.polis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * Read-only sorted set served straight from a memory-mapped file written by
+ * {@link #write}. Opening maps the file and reads its header, nothing is
+ * deserialized: a lookup binary-searches the blocks by their first keys and
+ * then the keys of one block, decoding only the keys it compares. Pages are
+ * loaded by the OS on first touch and shared between processes that map the
+ * same file. Updates throw {@link UnsupportedOperationException}.
+ * <p>
+ * File layout: block 0 is the header, blocks 1.. hold the keys in ascending
+ * order. A block is {@code int count}, {@code int offsets[count + 1]} of the
+ * keys within the block and the encoded keys; the rest of the block is
+ * padding, so block {@code b} starts at {@code b * blockSize}.
+ */
+public class MappedSortedSet<E extends Comparable<E>> implements INavigableSet<E> {
+
+    private static final int MAGIC = 0x53455431; //"SET1"
+    private static final int HEADER_SIZE = 16;
+    private static final int SEGMENT_SIZE = 1 << 30; //одно отображение не больше 2 ГБ
+    private static final int MIN_BLOCK_SIZE = 64;
+    private static final int MAX_BLOCK_SIZE = SEGMENT_SIZE;
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    private static final long NONE = -1; //позиция (блок << 32 | слот) за концом множества
+
+    /**
+     * Binary encoding of the keys. Decoding reads from absolute positions of
+     * the buffer and must not change its position.
+     */
+    public interface Codec<E> {
+
+        byte[] encode(E value);
+
+        E decode(ByteBuffer buffer, int offset, int length);
+
+        Codec<Integer> INTEGER = new Codec<>() {
+            @Override
+            public byte[] encode(Integer value) {
+                return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+            }
+
+            @Override
+            public Integer decode(ByteBuffer buffer, int offset, int length) {
+                return buffer.getInt(offset);
+            }
+        };
+
+        Codec<Long> LONG = new Codec<>() {
+            @Override
+            public byte[] encode(Long value) {
+                return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+            }
+
+            @Override
+            public Long decode(ByteBuffer buffer, int offset, int length) {
+                return buffer.getLong(offset);
+            }
+        };
+
+        /** UTF-8 */
+        Codec<String> STRING = new Codec<>() {
+            @Override
+            public byte[] encode(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer, int offset, int length) {
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = buffer.get(offset + i);
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    private final Codec<E> codec;
+    private final Comparator<E> comparator;
+    private final MappedByteBuffer[] segments;
+    private final int blockSize;
+    private final int blocksPerSegment;
+    private final int blocks; //блоки с ключами, без заголовка
+    private final int size;
+
+    private MappedSortedSet(MappedByteBuffer[] segments, Codec<E> codec, Comparator<E> comparator) throws IOException {
+        this.segments = segments;
+        this.codec = codec;
+        this.comparator = comparator;
+        final MappedByteBuffer header = segments[0];
+        if (header.capacity() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a sorted set file");
+        }
+        blockSize = header.getInt(4);
+        blocks = header.getInt(8);
+        size = header.getInt(12);
+        if (Integer.bitCount(blockSize) != 1 || blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE
+                || blocks < 0 || size < 0) {
+            throw new IOException("Sorted set file header is corrupted");
+        }
+        blocksPerSegment = SEGMENT_SIZE / blockSize;
+        if (((long) blocks + 1) * blockSize > (long) (segments.length - 1) * SEGMENT_SIZE
+                + segments[segments.length - 1].capacity()) {
+            throw new IOException("Sorted set file is truncated");
+        }
+    }
+
+    /**
+     * Writes the set in ascending order of its iterator with the default
+     * block size of 4 KB, the usual page size.
+     *
+     * @see #write(ISortedSet, Path, Codec, int)
+     */
+    public static <E extends Comparable<E>> void write(ISortedSet<E> set, Path file, Codec<E> codec)
+            throws IOException {
+        write(set, file, codec, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Writes the set to a temporary file next to the given one, forces it to
+     * the storage device and renames it over the file atomically, so the
+     * processes that have the old file mapped keep reading it intact.
+     *
+     * @param blockSize power of two, at least 64 bytes
+     * @throws IllegalArgumentException if the block size is wrong or an encoded key
+     *                                  does not fit into a block
+     */
+    public static <E extends Comparable<E>> void write(ISortedSet<E> set, Path file, Codec<E> codec, int blockSize)
+            throws IOException {
+        if (Integer.bitCount(blockSize) != 1 || blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be a power of two between "
+                    + MIN_BLOCK_SIZE + " and " + MAX_BLOCK_SIZE);
+        }
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer block = ByteBuffer.allocateDirect(blockSize);
+            final List<byte[]> pending = new ArrayList<>();
+            int used = 0; //байты ключей в pending
+            int blocks = 0;
+            int size = 0;
+            for (E value : set) {
+                final byte[] key = codec.encode(value);
+                if (Integer.BYTES * 3 + key.length > blockSize) {
+                    throw new IllegalArgumentException("Key does not fit into a block");
+                }
+                //count, count + 2 смещения и ключи
+                if (Integer.BYTES * (pending.size() + 3) + used + key.length > blockSize) {
+                    writeBlock(channel, block, ++blocks, pending);
+                    pending.clear();
+                    used = 0;
+                }
+                pending.add(key);
+                used += key.length;
+                size++;
+            }
+            if (!pending.isEmpty()) {
+                writeBlock(channel, block, ++blocks, pending);
+            }
+            block.clear();
+            block.putInt(MAGIC).putInt(blockSize).putInt(blocks).putInt(size);
+            block.position(0).limit(HEADER_SIZE);
+            channel.write(block, 0);
+            //файл дополняется до целого блока, чтобы последний блок отображался целиком
+            final long length = (long) (blocks + 1) * blockSize;
+            if (channel.size() < length) {
+                channel.write(ByteBuffer.allocate(1), length - 1);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeBlock(FileChannel channel, ByteBuffer block, int index, List<byte[]> keys)
+            throws IOException {
+        block.clear();
+        block.putInt(keys.size());
+        int offset = Integer.BYTES * (keys.size() + 2);
+        for (byte[] key : keys) {
+            block.putInt(offset);
+            offset += key.length;
+        }
+        block.putInt(offset);
+        for (byte[] key : keys) {
+            block.put(key);
+        }
+        block.flip();
+        long position = (long) index * block.capacity();
+        while (block.hasRemaining()) {
+            position += channel.write(block, position);
+        }
+    }
+
+    /**
+     * Maps the file read-only. The mapping outlives the channel and is
+     * released by the garbage collector together with the set.
+     *
+     * @param comparator the ordering the file was written in, null for natural ordering
+     * @throws IOException if the file can't be mapped or is not a set file
+     */
+    public static <E extends Comparable<E>> MappedSortedSet<E> open(Path file, Codec<E> codec,
+                                                                   Comparator<E> comparator) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long length = channel.size();
+            if (length < HEADER_SIZE) {
+                throw new IOException("Not a sorted set file");
+            }
+            final MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length - 1) / SEGMENT_SIZE + 1)];
+            for (int i = 0; i < segments.length; i++) {
+                final long position = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SEGMENT_SIZE, length - position));
+            }
+            return new MappedSortedSet<>(segments, codec, comparator);
+        }
+    }
+
+    public static <E extends Comparable<E>> MappedSortedSet<E> open(Path file, Codec<E> codec) throws IOException {
+        return open(file, codec, null);
+    }
+
+    @Override
+    public E first() {
+        if (size == 0) {
+            throw new NoSuchElementException("Set is empty, no first element");
+        }
+        return key(0, 0);
+    }
+
+    @Override
+    public E last() {
+        if (size == 0) {
+            throw new NoSuchElementException("Set is empty, no last element");
+        }
+        return key(blocks - 1, count(blocks - 1) - 1);
+    }
+
+    @Override
+    public List<E> inorderTraverse() {
+        List<E> res = new ArrayList<>(size);
+        for (E value : this) {
+            res.add(value);
+        }
+        return res;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        final long pos = ceilingPosition(value, true);
+        return pos != NONE && compare(key(pos), value) == 0;
+    }
+
+    @Override
+    public boolean add(E value) {
+        throw new UnsupportedOperationException("Set is read-only");
+    }
+
+    @Override
+    public boolean remove(E value) {
+        throw new UnsupportedOperationException("Set is read-only");
+    }
+
+    @Override
+    public E pollFirst() {
+        throw new UnsupportedOperationException("Set is read-only");
+    }
+
+    @Override
+    public E pollLast() {
+        throw new UnsupportedOperationException("Set is read-only");
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return new EytzingerSet<>(this, comparator);
+    }
+
+    @Override
+    public E floor(E value) {
+        return keyOrNull(floorPosition(value, true));
+    }
+
+    @Override
+    public E ceiling(E value) {
+        return keyOrNull(ceilingPosition(value, true));
+    }
+
+    @Override
+    public E higher(E value) {
+        return keyOrNull(ceilingPosition(value, false));
+    }
+
+    @Override
+    public E lower(E value) {
+        return keyOrNull(floorPosition(value, false));
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(size == 0 ? NONE : 0, null, false, false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new Itr(lastPosition(), null, false, true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED | Spliterator.DISTINCT
+                | Spliterator.NONNULL | Spliterator.IMMUTABLE | (comparator == null ? Spliterator.SORTED : 0));
+    }
+
+    @Override
+    public INavigableSet<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (compare(from, to) > 0) {
+            throw new IllegalArgumentException("from > to");
+        }
+        return new View(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public INavigableSet<E> headSet(E to, boolean inclusive) {
+        if (to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(null, false, to, inclusive);
+    }
+
+    @Override
+    public INavigableSet<E> tailSet(E from, boolean inclusive) {
+        if (from == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(from, inclusive, null, false);
+    }
+
+    /**
+     * @return position of the least key greater than or equal to the value
+     * (strictly greater, if not inclusive), {@link #NONE} if there is none
+     */
+    private long ceilingPosition(E value, boolean inclusive) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (blocks == 0) {
+            return NONE;
+        }
+        final int bias = inclusive ? 0 : 1; //ключ меньше значения, если compare < bias
+        //последний блок, первый ключ которого меньше значения
+        int lo = 0;
+        int hi = blocks - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (compare(key(mid, 0), value) < bias) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        final int block = lo;
+        int from = 0;
+        int to = count(block);
+        while (from < to) {
+            final int mid = (from + to) >>> 1;
+            if (compare(key(block, mid), value) < bias) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        if (from < count(block)) {
+            return position(block, from);
+        }
+        return block + 1 < blocks ? position(block + 1, 0) : NONE;
+    }
+
+    private long floorPosition(E value, boolean inclusive) {
+        //наибольший не больше value предшествует наименьшему большему
+        final long pos = ceilingPosition(value, !inclusive);
+        return pos == NONE ? lastPosition() : predecessor(pos);
+    }
+
+    private long lastPosition() {
+        return size == 0 ? NONE : position(blocks - 1, count(blocks - 1) - 1);
+    }
+
+    private long successor(long pos) {
+        final int block = (int) (pos >>> 32);
+        final int slot = (int) pos + 1;
+        if (slot < count(block)) {
+            return position(block, slot);
+        }
+        return block + 1 < blocks ? position(block + 1, 0) : NONE;
+    }
+
+    private long predecessor(long pos) {
+        final int block = (int) (pos >>> 32);
+        final int slot = (int) pos;
+        if (slot > 0) {
+            return position(block, slot - 1);
+        }
+        return block > 0 ? position(block - 1, count(block - 1) - 1) : NONE;
+    }
+
+    private static long position(int block, int slot) {
+        return (long) block << 32 | slot;
+    }
+
+    /**
+     * @param block index of the block with keys, block 0 of the file is the header
+     */
+    private ByteBuffer segment(int block) {
+        return segments[(block + 1) / blocksPerSegment];
+    }
+
+    private int base(int block) {
+        return (block + 1) % blocksPerSegment * blockSize;
+    }
+
+    private int count(int block) {
+        return segment(block).getInt(base(block));
+    }
+
+    private E key(int block, int slot) {
+        final ByteBuffer segment = segment(block);
+        final int base = base(block);
+        final int offset = segment.getInt(base + Integer.BYTES * (slot + 1));
+        final int end = segment.getInt(base + Integer.BYTES * (slot + 2));
+        return codec.decode(segment, base + offset, end - offset);
+    }
+
+    private E key(long pos) {
+        return key((int) (pos >>> 32), (int) pos);
+    }
+
+    private E keyOrNull(long pos) {
+        return pos == NONE ? null : key(pos);
+    }
+
+    private int compare(E v1, E v2) {
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    /**
+     * Walks the keys block by block until the {@code to} bound.
+     */
+    private class Itr implements Iterator<E> {
+        private final E to;
+        private final boolean toInclusive;
+        private final boolean descending;
+        private long next;
+        private E nextValue;
+
+        Itr(long next, E to, boolean toInclusive, boolean descending) {
+            this.to = to;
+            this.toInclusive = toInclusive;
+            this.descending = descending;
+            this.next = next;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextValue != null;
+        }
+
+        @Override
+        public E next() {
+            if (nextValue == null) {
+                throw new NoSuchElementException();
+            }
+            final E res = nextValue;
+            next = descending ? predecessor(next) : successor(next);
+            advance();
+            return res;
+        }
+
+        /**
+         * Decodes the key at {@code next} once, for both the bound check and {@link #next()}.
+         */
+        private void advance() {
+            nextValue = null;
+            if (next != NONE) {
+                final E value = key(next);
+                if (to != null) {
+                    final int cmp = descending ? compare(to, value) : compare(value, to);
+                    if (cmp > 0 || cmp == 0 && !toInclusive) {
+                        return;
+                    }
+                }
+                nextValue = value;
+            }
+        }
+    }
+
+    private class View extends SubSet<E> {
+
+        View(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            super(MappedSortedSet.this, comparator, lo, loInclusive, hi, hiInclusive);
+        }
+
+        @Override
+        Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending) {
+            long start;
+            if (descending) {
+                start = from == null ? lastPosition() : floorPosition(from, fromInclusive);
+            } else {
+                start = from == null ? (size == 0 ? NONE : 0) : ceilingPosition(from, fromInclusive);
+            }
+            return new Itr(start, to, toInclusive, descending);
+        }
+
+        @Override
+        SubSet<E> create(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            return new View(lo, loInclusive, hi, hiInclusive);
+        }
+    }
+}
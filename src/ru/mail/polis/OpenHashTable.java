@@ -1,11 +1,18 @@
 package ru.mail.polis;
 
+import java.util.BitSet;
 import java.util.Comparator;
 
-//TODO: write code here
 public class OpenHashTable<E extends Comparable<E>> implements ISet<E> {
 
+    private static final Object DELETED = new Object();
+
+    private final int INITIAL_CAPACITY = 8;
     private Comparator<E> comparator;
+    private Object[] table;
+    private int size;
+    private int deleted; //число "надгробий"
+    private SetMetrics metrics;
 
     public OpenHashTable() {
         this(null);
@@ -13,30 +20,186 @@ public class OpenHashTable<E extends Comparable<E>> implements ISet<E> {
 
     public OpenHashTable(Comparator<E> comparator) {
         this.comparator = comparator;
+        this.table = new Object[INITIAL_CAPACITY];
     }
 
     @Override
     public int size() {
-        return 0;
+        return size;
     }
 
     @Override
     public boolean isEmpty() {
-        return false;
+        return size == 0;
     }
 
     @Override
     public boolean contains(E value) {
-        return false;
+        return indexOf(value) >= 0;
     }
 
     @Override
     public boolean add(E value) {
-        return false;
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final int h = spread(value.hashCode());
+        final int mask = table.length - 1;
+        final int step = step(h, mask);
+        int idx = h & mask;
+        int free = -1;
+        Object curr;
+        while ((curr = table[idx]) != null) {
+            if (curr == DELETED) {
+                if (free < 0) {
+                    free = idx;
+                }
+            } else if (compare(value, elementAt(idx)) == 0) {
+                return false;
+            }
+            idx = (idx + step) & mask;
+        }
+        if (free >= 0) {
+            //занимаем первое встреченное "надгробие"
+            table[free] = value;
+            deleted--;
+        } else {
+            table[idx] = value;
+        }
+        size++;
+        resize();
+        return true;
     }
 
     @Override
     public boolean remove(E value) {
-        return false;
+        int idx = indexOf(value);
+        if (idx < 0) {
+            return false;
+        }
+        table[idx] = DELETED;
+        size--;
+        deleted++;
+        return true;
+    }
+
+    /**
+     * Looks the keys up in groups: first hashes them all, then loads the
+     * first slot of every probe sequence, and only then probes.
+     */
+    @Override
+    public void containsAll(E[] keys, BitSet out) {
+        final Object[] tab = table;
+        final int mask = tab.length - 1;
+        final int[] hashes = new int[Batch.GROUP];
+        final Object[] first = new Object[Batch.GROUP]; //только чтобы загрузить первые ячейки
+        for (int from = 0; from < keys.length; from += Batch.GROUP) {
+            final int n = Math.min(Batch.GROUP, keys.length - from);
+            for (int i = 0; i < n; i++) {
+                if (keys[from + i] == null) {
+                    throw new NullPointerException("Value is null");
+                }
+                hashes[i] = spread(keys[from + i].hashCode());
+            }
+            for (int i = 0; i < n; i++) {
+                first[i] = tab[hashes[i] & mask];
+            }
+            for (int i = 0; i < n; i++) {
+                out.set(from + i, indexOf(keys[from + i], hashes[i]) >= 0);
+            }
+        }
+    }
+
+    @Override
+    public boolean addAll(E[] keys) {
+        return Batch.addAll(this, keys);
+    }
+
+    private int indexOf(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return indexOf(value, spread(value.hashCode()));
+    }
+
+    private int indexOf(E value, int h) {
+        final int mask = table.length - 1;
+        final int step = step(h, mask);
+        int idx = h & mask;
+        int probes = 1;
+        Object curr;
+        //load factor (вместе с "надгробиями") < 1/2, поэтому пустая ячейка всегда найдётся
+        while ((curr = table[idx]) != null) {
+            if (curr != DELETED && compare(value, elementAt(idx)) == 0) {
+                break;
+            }
+            idx = (idx + step) & mask;
+            probes++;
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(probes);
+        }
+        return curr != null ? idx : -1;
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Second hash function: step is odd, so with power-of-two capacity
+     * the probe sequence visits every slot of the table.
+     */
+    private static int step(int h, int mask) {
+        return (Integer.rotateLeft(h * 0x9E3779B9, 16) & mask) | 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int index) {
+        return (E) table[index];
+    }
+
+    private int compare(E v1, E v2) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    /**
+     * Rehashes when live elements plus tombstones reach load factor 1/2.
+     * If most of the occupied slots are tombstones the table is compacted
+     * in place (same capacity), otherwise its capacity is doubled.
+     */
+    private void resize() {
+        if ((size + deleted) * 2 < table.length) {
+            return;
+        }
+        final long start = SetMetrics.ENABLED ? System.nanoTime() : 0;
+        int capacity = size * 4 < table.length ? table.length : table.length << 1;
+        Object[] old = table;
+        table = new Object[capacity];
+        deleted = 0;
+        final int mask = capacity - 1;
+        for (Object curr : old) {
+            if (curr != null && curr != DELETED) {
+                //все элементы уникальны, сравнивать не нужно
+                final int h = spread(curr.hashCode());
+                final int step = step(h, mask);
+                int idx = h & mask;
+                while (table[idx] != null) {
+                    idx = (idx + step) & mask;
+                }
+                table[idx] = curr;
+            }
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.resized(old.length, capacity, System.nanoTime() - start);
+        }
     }
 }
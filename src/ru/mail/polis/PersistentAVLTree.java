@@ -0,0 +1,414 @@
+package ru.mail.polis;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+
+/**
+ * AVL tree with immutable nodes: {@code add} and {@code remove} copy the
+ * O(log n) nodes on the path and publish the new root, sharing the rest of
+ * the tree with the previous version. {@link #snapshot()} is O(1) and
+ * returns that version as an immutable set, which any number of threads may
+ * read without locking while writers go on; versions nobody refers to are
+ * reclaimed by GC. Writers are serialized by the tree's monitor.
+ */
+public class PersistentAVLTree<E extends Comparable<E>> implements ISortedSet<E> {
+
+    class Node {
+        final E data;
+        final Node left;
+        final Node right;
+        final int height;
+
+        Node(E data, Node left, Node right) {
+            this.data = data;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    private final Comparator<E> comparator;
+    private volatile Snapshot current = new Snapshot(null, 0);
+    private volatile SetMetrics metrics; //общий для всех версий
+
+    public PersistentAVLTree() {
+        this(null);
+    }
+
+    public PersistentAVLTree(Comparator<E> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * @return immutable view of the current version of the set
+     */
+    public ISortedSet<E> snapshot() {
+        return current;
+    }
+
+    @Override
+    public E first() {
+        return current.first();
+    }
+
+    @Override
+    public E last() {
+        return current.last();
+    }
+
+    @Override
+    public List<E> inorderTraverse() {
+        return current.inorderTraverse();
+    }
+
+    @Override
+    public int size() {
+        return current.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return current.root == null;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        return current.contains(value);
+    }
+
+    /**
+     * The iterators and spliterators run over the version current at their
+     * creation and do not see later changes.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return current.iterator();
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return current.descendingIterator();
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return current.spliterator();
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return snapshot().freeze();
+    }
+
+    /**
+     * Attaches the receiver to all versions, also to the snapshots taken
+     * before; it must be thread-safe, as snapshots are read concurrently.
+     */
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public synchronized boolean add(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final Snapshot snapshot = current;
+        final Node root = insert(snapshot.root, value);
+        if (root == snapshot.root) {
+            return false;
+        }
+        current = new Snapshot(root, snapshot.size + 1);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final Snapshot snapshot = current;
+        final Node root = delete(snapshot.root, value);
+        if (root == snapshot.root) {
+            return false;
+        }
+        current = new Snapshot(root, snapshot.size - 1);
+        return true;
+    }
+
+    /**
+     * @return the copied subtree with the value, or the same one if the value is there
+     */
+    private Node insert(Node elem, E value) {
+        if (elem == null) {
+            return new Node(value, null, null);
+        }
+        final int cmp = compare(value, elem.data);
+        if (cmp < 0) {
+            final Node left = insert(elem.left, value);
+            return left == elem.left ? elem : balance(elem.data, left, elem.right);
+        }
+        if (cmp > 0) {
+            final Node right = insert(elem.right, value);
+            return right == elem.right ? elem : balance(elem.data, elem.left, right);
+        }
+        return elem;
+    }
+
+    /**
+     * @return the copied subtree without the value, or the same one if the value is not there
+     */
+    private Node delete(Node elem, E value) {
+        if (elem == null) {
+            return null;
+        }
+        final int cmp = compare(value, elem.data);
+        if (cmp < 0) {
+            final Node left = delete(elem.left, value);
+            return left == elem.left ? elem : balance(elem.data, left, elem.right);
+        }
+        if (cmp > 0) {
+            final Node right = delete(elem.right, value);
+            return right == elem.right ? elem : balance(elem.data, elem.left, right);
+        }
+        if (elem.left == null) {
+            return elem.right;
+        }
+        if (elem.right == null) {
+            return elem.left;
+        }
+        //заменяем наименьшим из больших
+        Node min = elem.right;
+        while (min.left != null) {
+            min = min.left;
+        }
+        return balance(min.data, elem.left, deleteMin(elem.right));
+    }
+
+    private Node deleteMin(Node elem) {
+        if (elem.left == null) {
+            return elem.right;
+        }
+        return balance(elem.data, deleteMin(elem.left), elem.right);
+    }
+
+    /**
+     * @return new balanced subtree of the value and the subtrees, whose heights differ by at most 2
+     */
+    private Node balance(E data, Node left, Node right) {
+        final int hl = height(left);
+        final int hr = height(right);
+        if (hl > hr + 1) {
+            rotated();
+            if (height(left.left) >= height(left.right)) {
+                return new Node(left.data, left.left, new Node(data, left.right, right));
+            }
+            rotated();
+            return new Node(left.right.data,
+                    new Node(left.data, left.left, left.right.left),
+                    new Node(data, left.right.right, right));
+        }
+        if (hr > hl + 1) {
+            rotated();
+            if (height(right.right) >= height(right.left)) {
+                return new Node(right.data, new Node(data, left, right.left), right.right);
+            }
+            rotated();
+            return new Node(right.left.data,
+                    new Node(data, left, right.left.left),
+                    new Node(right.data, right.left.right, right.right));
+        }
+        return new Node(data, left, right);
+    }
+
+    private int height(Node elem) {
+        return elem != null ? elem.height : 0;
+    }
+
+    /**
+     * Reports the length of the search path of a lookup.
+     */
+    private boolean probed(int length, boolean found) {
+        final SetMetrics metrics = this.metrics;
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(length);
+        }
+        return found;
+    }
+
+    private void rotated() {
+        final SetMetrics metrics = this.metrics;
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.rotated();
+        }
+    }
+
+    private int compare(E v1, E v2) {
+        final SetMetrics metrics = this.metrics;
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    /**
+     * One version of the tree. Its nodes never change, so it needs no locking.
+     */
+    private class Snapshot implements ISortedSet<E> {
+        private final Node root;
+        private final int size;
+
+        Snapshot(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        @Override
+        public E first() {
+            if (root == null) {
+                throw new NoSuchElementException("Tree is empty, no first element");
+            }
+            Node curr = root;
+            while (curr.left != null) {
+                curr = curr.left;
+            }
+            return curr.data;
+        }
+
+        @Override
+        public E last() {
+            if (root == null) {
+                throw new NoSuchElementException("Tree is empty, no last element");
+            }
+            Node curr = root;
+            while (curr.right != null) {
+                curr = curr.right;
+            }
+            return curr.data;
+        }
+
+        @Override
+        public List<E> inorderTraverse() {
+            List<E> res = new ArrayList<>(size);
+            for (Iterator<E> it = iterator(); it.hasNext(); ) {
+                res.add(it.next());
+            }
+            return res;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return root == null;
+        }
+
+        @Override
+        public boolean contains(E value) {
+            if (value == null) {
+                throw new NullPointerException("Value is null");
+            }
+            int depth = 0;
+            Node curr = root;
+            while (curr != null) {
+                depth++;
+                final int cmp = compare(value, curr.data);
+                if (cmp == 0) {
+                    return probed(depth, true);
+                }
+                curr = cmp < 0 ? curr.left : curr.right;
+            }
+            return probed(depth, false);
+        }
+
+        @Override
+        public void setMetrics(SetMetrics metrics) {
+            PersistentAVLTree.this.setMetrics(metrics);
+        }
+
+        @Override
+        public boolean add(E value) {
+            throw new UnsupportedOperationException("Snapshot is immutable");
+        }
+
+        @Override
+        public boolean remove(E value) {
+            throw new UnsupportedOperationException("Snapshot is immutable");
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Itr(root, false);
+        }
+
+        @Override
+        public Iterator<E> descendingIterator() {
+            return new Itr(root, true);
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+            return new Split(root, size);
+        }
+
+        @Override
+        public INavigableSet<E> freeze() {
+            return new EytzingerSet<>(this, comparator);
+        }
+    }
+
+    private class Itr extends TreeIterator<Node, E> {
+        Itr(Node root, boolean descending) {
+            super(root, null, descending);
+        }
+
+        @Override
+        Node left(Node node) {
+            return node.left;
+        }
+
+        @Override
+        Node right(Node node) {
+            return node.right;
+        }
+
+        @Override
+        E value(Node node) {
+            return node.data;
+        }
+    }
+
+    private class Split extends TreeSpliterator<Node, E> {
+        Split(Node root, int size) {
+            super(root, null, comparator, size);
+        }
+
+        @Override
+        Node left(Node node) {
+            return node.left;
+        }
+
+        @Override
+        Node right(Node node) {
+            return node.right;
+        }
+
+        @Override
+        E value(Node node) {
+            return node.data;
+        }
+
+        @Override
+        TreeSpliterator<Node, E> create() {
+            return new Split(null, 0);
+        }
+    }
+}
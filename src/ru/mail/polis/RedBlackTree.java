@@ -2,11 +2,12 @@ package ru.mail.polis;
 
 import java.util.*;
 
-public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
+public class RedBlackTree<E extends Comparable<E>> implements IOrderStatisticSet<E>, INavigableSet<E> {
     private int size;
     private final Comparator<E> comparator;
     private Node nil = new Node(false, null, null, null, null);
     private Node root = nil;
+    private SetMetrics metrics;
 
     public RedBlackTree() {
         this(null);
@@ -20,8 +21,10 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         if (isEmpty()) {
             throw new NoSuchElementException("Tree is empty, no first element");
         }
+        final int maxDepth = maxDepth();
         Node curr = root;
-        while (curr.left != nil) {
+        for (int depth = 1; curr.left != nil; depth++) {
+            checkDepth(depth, maxDepth);
             curr = curr.left;
         }
         return curr.data;
@@ -31,16 +34,18 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         if (isEmpty()) {
             throw new NoSuchElementException("Tree is empty, no last element");
         }
+        final int maxDepth = maxDepth();
         Node curr = root;
-        while (curr.right != nil) {
+        for (int depth = 1; curr.right != nil; depth++) {
+            checkDepth(depth, maxDepth);
             curr = curr.right;
         }
         return curr.data;
     }
-    private Node last(Node elem) {
+    private Node first(Node elem) {
         Node curr = elem;
-        while (curr.right != nil) {
-            curr = curr.right;
+        while (curr.left != nil) {
+            curr = curr.left;
         }
         return curr;
     }
@@ -50,7 +55,7 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         if (isEmpty()) {
             throw new NoSuchElementException("Tree is empty");
         }
-        List<E> res = new LinkedList<>();
+        List<E> res = new ArrayList<>(size);
         inorderTraverse(root, res);
         return res;
     }
@@ -62,6 +67,25 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         }
     }
 
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new Itr(true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return new Split(root, size);
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return new EytzingerSet<>(this, comparator);
+    }
 
     @Override
     public int size() {
@@ -76,12 +100,15 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         if (value == null) {
             throw new NullPointerException("Value is null");
         }
+        int depth = 0;
         if (!isEmpty()) {
+            final int maxDepth = maxDepth();
             Node curr = root;
             while (curr != nil) {
+                checkDepth(++depth, maxDepth);
                 int cmp = compare(curr.data, value);
                 if (cmp == 0) {
-                    return true;
+                    return probed(depth, true);
                 } else if (cmp < 0) {
                     curr = curr.right;
                 } else {
@@ -89,7 +116,58 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
                 }
             }
         }
-        return false;
+        return probed(depth, false);
+    }
+
+    /**
+     * Descends for a group of keys in lockstep, one level of all the
+     * searches at a time, so the nodes they load are fetched in parallel.
+     */
+    @Override
+    public void containsAll(E[] keys, BitSet out) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Node[] curr = (Node[]) new RedBlackTree.Node[Batch.GROUP]; //null - поиск закончен
+        final int[] depth = new int[Batch.GROUP];
+        for (int from = 0; from < keys.length; from += Batch.GROUP) {
+            final int n = Math.min(Batch.GROUP, keys.length - from);
+            int active = 0;
+            for (int i = 0; i < n; i++) {
+                if (keys[from + i] == null) {
+                    throw new NullPointerException("Value is null");
+                }
+                out.clear(from + i);
+                depth[i] = 0;
+                curr[i] = root == nil ? null : root;
+                if (curr[i] != null) {
+                    active++;
+                } else {
+                    probed(0, false);
+                }
+            }
+            while (active > 0) {
+                for (int i = 0; i < n; i++) {
+                    final Node node = curr[i];
+                    if (node == null) {
+                        continue;
+                    }
+                    depth[i]++;
+                    final int cmp = compare(node.data, keys[from + i]);
+                    final Node next = cmp == 0 ? nil : cmp < 0 ? node.right : node.left;
+                    if (next == nil) {
+                        out.set(from + i, probed(depth[i], cmp == 0));
+                        curr[i] = null;
+                        active--;
+                    } else {
+                        curr[i] = next;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean addAll(E[] keys) {
+        return Batch.addAll(this, keys);
     }
 
     @Override
@@ -103,12 +181,18 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
 
         while (x != nil) {
             y = x;
-            if (compare(value, x.data) < 0) {
+            int cmp = compare(value, x.data);
+            if (cmp == 0) {
+                return false;
+            } else if (cmp < 0) {
                 x = x.left;
             } else {
                 x = x.right;
             }
         }
+        for (Node p = y; p != nil; p = p.parent) {
+            p.count++;
+        }
         if (y == nil) {
             z = new Node(false, value, y, nil, nil);
             root = z;
@@ -163,6 +247,9 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         root.isRed = false;
     }
     private void leftRotate(Node x) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.rotated();
+        }
         Node y = x.right;
         x.right = y.left;
 
@@ -179,8 +266,13 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         }
         y.left = x;
         x.parent = y;
+        y.count = x.count;
+        x.count = x.left.count + x.right.count + 1;
     }
     private void rightRotate(Node y) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.rotated();
+        }
         Node x = y.left;
         y.left = x.right;
 
@@ -197,6 +289,8 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         }
         x.right = y;
         y.parent = x;
+        x.count = y.count;
+        y.count = y.left.count + y.right.count + 1;
     }
 
     @Override
@@ -212,6 +306,11 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         Node x;
         boolean isRedOriginal = y.isRed;
 
+        //узел, который физически исчезает из дерева: z или его преемник
+        Node removed = z.left == nil || z.right == nil ? z : first(z.right);
+        for (Node p = removed.parent; p != nil; p = p.parent) {
+            p.count--;
+        }
         if (z.left == nil) {
             x = z.right;
             transplant(z, z.right);
@@ -219,7 +318,7 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
             x = z.left;
             transplant(z, z.left);
         } else {
-            y = last(z.right);
+            y = first(z.right);
             isRedOriginal = y.isRed;
             x = y.right;
             if (y.parent == z) {
@@ -233,6 +332,7 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
             y.left = z.left;
             y.left.parent = y;
             y.isRed = z.isRed;
+            y.count = z.count;
         }
         if (!isRedOriginal) {
             removeFixup(x);
@@ -318,12 +418,297 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         x.isRed = false;
     }
 
+    @Override
+    public int rank(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final int maxDepth = maxDepth();
+        int rank = 0;
+        Node curr = root;
+        for (int depth = 1; curr != nil; depth++) {
+            checkDepth(depth, maxDepth);
+            int cmp = compare(value, curr.data);
+            if (cmp <= 0) {
+                if (cmp == 0) {
+                    return rank + curr.left.count;
+                }
+                curr = curr.left;
+            } else {
+                rank += curr.left.count + 1;
+                curr = curr.right;
+            }
+        }
+        return rank;
+    }
+
+    @Override
+    public E select(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        final int maxDepth = maxDepth();
+        Node curr = root;
+        for (int depth = 1; ; depth++) {
+            checkDepth(depth, maxDepth);
+            final int left = curr.left.count;
+            if (index < left) {
+                curr = curr.left;
+            } else if (index > left) {
+                index -= left + 1;
+                curr = curr.right;
+            } else {
+                return curr.data;
+            }
+        }
+    }
+
+    @Override
+    public int countInRange(E from, E to) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (compare(from, to) >= 0) {
+            return 0;
+        }
+        return rank(to) - rank(from);
+    }
+
+    public static <E extends Comparable<E>> RedBlackTree<E> fromSorted(Iterator<? extends E> sorted, int size) {
+        return fromSorted(sorted, size, null);
+    }
+
+    /**
+     * Builds a perfectly balanced tree in O(size).
+     *
+     * @param sorted iterator over the elements in strictly ascending order
+     * @param size   number of elements to take from the iterator
+     * @throws IllegalArgumentException if the elements are not strictly ascending
+     */
+    public static <E extends Comparable<E>> RedBlackTree<E> fromSorted(Iterator<? extends E> sorted, int size,
+                                                                       Comparator<E> comparator) {
+        RedBlackTree<E> tree = new RedBlackTree<>(comparator);
+        tree.addAllSorted(sorted, size);
+        return tree;
+    }
+
+    /**
+     * Small batches are added one by one, larger ones are merged with the
+     * nodes by {@link TreeIterator#merge}, and the tree is rebuilt perfectly
+     * balanced, with only the last incomplete level red, in O(n + size).
+     */
+    @Override
+    public boolean addAllSorted(Iterator<? extends E> sorted, int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size is negative: " + size);
+        }
+        if ((long) size * (32 - Integer.numberOfLeadingZeros(this.size)) < this.size) {
+            return INavigableSet.super.addAllSorted(sorted, size);
+        }
+        final Object[] nodes = new Itr(false).merge(this.size, sorted, size,
+                value -> new Node(false, value, nil, nil, nil), this::compare);
+        root = build(nodes, 0, nodes.length, nil, 0, redLevel(nodes.length));
+        final boolean changed = nodes.length != this.size;
+        this.size = nodes.length;
+        return changed;
+    }
+
+    /**
+     * @return root of a perfectly balanced tree of nodes[lo, hi), which are in order
+     */
+    @SuppressWarnings("unchecked")
+    private Node build(Object[] nodes, int lo, int hi, Node parent, int depth, int redLevel) {
+        if (lo >= hi) {
+            return nil;
+        }
+        final int mid = (lo + hi) >>> 1;
+        Node elem = (Node) nodes[mid];
+        elem.parent = parent;
+        elem.left = build(nodes, lo, mid, elem, depth + 1, redLevel);
+        elem.right = build(nodes, mid + 1, hi, elem, depth + 1, redLevel);
+        elem.isRed = depth == redLevel;
+        elem.count = hi - lo;
+        return elem;
+    }
+
+    /**
+     * @return depth of the last level of a perfectly balanced tree of the given size,
+     * if it is not complete; this level is colored red, all others are black
+     */
+    private static int redLevel(int size) {
+        int level = 0;
+        for (int m = size - 1; m >= 0; m = m / 2 - 1) {
+            level++;
+        }
+        return level;
+    }
+
+    @Override
+    public E floor(E value) {
+        Node node = lowerNode(value, true);
+        return node != nil ? node.data : null;
+    }
+
+    @Override
+    public E ceiling(E value) {
+        Node node = higherNode(value, true);
+        return node != nil ? node.data : null;
+    }
+
+    @Override
+    public E higher(E value) {
+        Node node = higherNode(value, false);
+        return node != nil ? node.data : null;
+    }
+
+    @Override
+    public E lower(E value) {
+        Node node = lowerNode(value, false);
+        return node != nil ? node.data : null;
+    }
+
+    @Override
+    public E pollFirst() {
+        if (isEmpty()) {
+            return null;
+        }
+        E first = first();
+        remove(first);
+        return first;
+    }
+
+    @Override
+    public E pollLast() {
+        if (isEmpty()) {
+            return null;
+        }
+        E last = last();
+        remove(last);
+        return last;
+    }
+
+    @Override
+    public INavigableSet<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (compare(from, to) > 0) {
+            throw new IllegalArgumentException("from > to");
+        }
+        return new View(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public INavigableSet<E> headSet(E to, boolean inclusive) {
+        if (to == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(null, false, to, inclusive);
+    }
+
+    @Override
+    public INavigableSet<E> tailSet(E from, boolean inclusive) {
+        if (from == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return new View(from, inclusive, null, false);
+    }
+
+    /**
+     * @return the greatest node less than (or equal to) the value, or nil if there is none
+     */
+    private Node lowerNode(E value, boolean inclusive) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final int maxDepth = maxDepth();
+        Node res = nil;
+        Node curr = root;
+        for (int depth = 1; curr != nil; depth++) {
+            checkDepth(depth, maxDepth);
+            int cmp = compare(value, curr.data);
+            if (cmp > 0 || cmp == 0 && inclusive) {
+                res = curr;
+                if (cmp == 0) {
+                    break;
+                }
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return the least node greater than (or equal to) the value, or nil if there is none
+     */
+    private Node higherNode(E value, boolean inclusive) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final int maxDepth = maxDepth();
+        Node res = nil;
+        Node curr = root;
+        for (int depth = 1; curr != nil; depth++) {
+            checkDepth(depth, maxDepth);
+            int cmp = compare(value, curr.data);
+            if (cmp < 0 || cmp == 0 && inclusive) {
+                res = curr;
+                if (cmp == 0) {
+                    break;
+                }
+                curr = curr.left;
+            } else {
+                curr = curr.right;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return bound on the depth of a node: a red-black tree of n nodes is at most 2 * log2(n + 1) high
+     */
+    private int maxDepth() {
+        return 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(size + 1)) + 2;
+    }
+
+    /**
+     * A search deeper than the bound can only be a lock-free reader of
+     * {@link ConcurrentRedBlackTree} that sees a rotation half done, maybe
+     * with the links looped, so it is stopped to be retried under the lock.
+     */
+    private static void checkDepth(int depth, int maxDepth) {
+        if (depth > maxDepth) {
+            throw new ConcurrentModificationException("Search path is longer than the tree is high");
+        }
+    }
+
+    /**
+     * Reports the length of the search path of a lookup.
+     */
+    private boolean probed(int length, boolean found) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(length);
+        }
+        return found;
+    }
+
     private int compare(E v1, E v2) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
         return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
     }
 
     private class Node {
         boolean isRed;
+        int count; //число узлов в поддереве, у nil 0
         E data;
         Node parent;
         Node right;
@@ -334,6 +719,7 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         }
         Node(boolean isRed, E data, Node parent, Node right, Node left) {
             this.isRed = isRed;
+            this.count = data != null ? 1 : 0;
             this.data = data;
             this.parent = parent;
             this.right = right;
@@ -341,6 +727,7 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         }
         Node(Node node) {
             isRed = node.isRed;
+            count = node.count;
             data = node.data;
             parent = node.parent;
             right = node.right;
@@ -369,6 +756,74 @@ public class RedBlackTree<E extends Comparable<E>> implements ISortedSet<E> {
         }
     }
 
+    private class Itr extends TreeIterator<Node, E> {
+        Itr(boolean descending) {
+            super(root, nil, descending);
+        }
+
+        Itr(boolean descending, E from, boolean fromInclusive, E to, boolean toInclusive) {
+            super(root, nil, descending, RedBlackTree.this::compare,
+                    from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        Node left(Node node) {
+            return node.left;
+        }
+
+        @Override
+        Node right(Node node) {
+            return node.right;
+        }
+
+        @Override
+        E value(Node node) {
+            return node.data;
+        }
+    }
+
+    private class Split extends TreeSpliterator<Node, E> {
+        Split(Node root, int size) {
+            super(root, nil, comparator, size);
+        }
+
+        @Override
+        Node left(Node node) {
+            return node.left;
+        }
+
+        @Override
+        Node right(Node node) {
+            return node.right;
+        }
+
+        @Override
+        E value(Node node) {
+            return node.data;
+        }
+
+        @Override
+        TreeSpliterator<Node, E> create() {
+            return new Split(nil, 0);
+        }
+    }
+
+    private class View extends SubSet<E> {
+        View(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            super(RedBlackTree.this, comparator, lo, loInclusive, hi, hiInclusive);
+        }
+
+        @Override
+        Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending) {
+            return new Itr(descending, from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        SubSet<E> create(E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+            return new View(lo, loInclusive, hi, hiInclusive);
+        }
+    }
+
     public static void main(String[] args) {
         RedBlackTree<Integer> tree = new RedBlackTree<>();
         tree.add(50);
@@ -0,0 +1,43 @@
+package ru.mail.polis;
+
+/**
+ * Receiver of internal events of a set, attached with {@link ISet#setMetrics}.
+ * Callbacks run inside the operation on its thread, so they must be cheap,
+ * and a set shared between threads calls them concurrently.
+ * <p>
+ * Sets report events only if the JVM is started with
+ * {@code -Dru.mail.polis.metrics=true}. Otherwise {@link #ENABLED} is a
+ * constant false and the JIT drops the instrumentation, so an attached
+ * receiver costs nothing. See {@link SetStatistics} for the default one.
+ */
+public interface SetMetrics {
+
+    boolean ENABLED = Boolean.getBoolean("ru.mail.polis.metrics");
+
+    /**
+     * A lookup inspected {@code length} entries: chain nodes of a hash table,
+     * slots of an open-addressing one, or nodes on the search path of a tree.
+     */
+    default void probed(int length) {
+    }
+
+    /**
+     * The set compared two keys.
+     */
+    default void compared() {
+    }
+
+    /**
+     * A tree made a single rotation.
+     */
+    default void rotated() {
+    }
+
+    /**
+     * The set reallocated its table or node arrays.
+     *
+     * @param nanos time spent copying or rehashing
+     */
+    default void resized(int oldCapacity, int newCapacity, long nanos) {
+    }
+}
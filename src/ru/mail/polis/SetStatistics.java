@@ -0,0 +1,172 @@
+package ru.mail.polis;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Thread-safe {@link SetMetrics} accumulating counters and a histogram of
+ * probe lengths. Can be registered as an MBean; every resize is also
+ * recorded as a {@code ru.mail.polis.Resize} JFR event when a recording
+ * enables it.
+ */
+public class SetStatistics implements SetMetrics, SetStatisticsMBean {
+
+    private static final int HISTOGRAM_SIZE = 64; //последний столбец - длины от 63 и больше
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder probes = new LongAdder();
+    private final LongAccumulator maxProbeLength = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_SIZE);
+    private final LongAdder comparisons = new LongAdder();
+    private final LongAdder rotations = new LongAdder();
+    private final LongAdder resizes = new LongAdder();
+    private final LongAdder resizeNanos = new LongAdder();
+    private final LongAccumulator maxResizeNanos = new LongAccumulator(Math::max, 0);
+
+    @Label("Set Resize")
+    @Name("ru.mail.polis.Resize")
+    @Category("Sets")
+    static class ResizeEvent extends Event {
+        @Label("Old Capacity")
+        int oldCapacity;
+
+        @Label("New Capacity")
+        int newCapacity;
+
+        @Label("Resize Time")
+        @Timespan
+        long nanos;
+    }
+
+    @Override
+    public void probed(int length) {
+        lookups.increment();
+        probes.add(length);
+        maxProbeLength.accumulate(length);
+        histogram.incrementAndGet(Math.min(length, HISTOGRAM_SIZE - 1));
+    }
+
+    @Override
+    public void compared() {
+        comparisons.increment();
+    }
+
+    @Override
+    public void rotated() {
+        rotations.increment();
+    }
+
+    @Override
+    public void resized(int oldCapacity, int newCapacity, long nanos) {
+        resizes.increment();
+        resizeNanos.add(nanos);
+        maxResizeNanos.accumulate(nanos);
+        ResizeEvent event = new ResizeEvent();
+        if (event.shouldCommit()) {
+            event.oldCapacity = oldCapacity;
+            event.newCapacity = newCapacity;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Registers this object in the platform MBean server as
+     * {@code ru.mail.polis:type=SetStatistics,name=<name>}.
+     *
+     * @return the name of the registered MBean
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("ru.mail.polis:type=SetStatistics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    @Override
+    public double getMeanProbeLength() {
+        final long n = lookups.sum();
+        return n == 0 ? 0 : (double) probes.sum() / n;
+    }
+
+    @Override
+    public long getMaxProbeLength() {
+        return maxProbeLength.get();
+    }
+
+    @Override
+    public long[] getProbeHistogram() {
+        long[] res = new long[HISTOGRAM_SIZE];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = histogram.get(i);
+        }
+        return res;
+    }
+
+    @Override
+    public long getComparisons() {
+        return comparisons.sum();
+    }
+
+    @Override
+    public long getRotations() {
+        return rotations.sum();
+    }
+
+    @Override
+    public long getResizes() {
+        return resizes.sum();
+    }
+
+    @Override
+    public long getResizeNanos() {
+        return resizeNanos.sum();
+    }
+
+    @Override
+    public long getMaxResizeNanos() {
+        return maxResizeNanos.get();
+    }
+
+    @Override
+    public void reset() {
+        lookups.reset();
+        probes.reset();
+        maxProbeLength.reset();
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            histogram.set(i, 0);
+        }
+        comparisons.reset();
+        rotations.reset();
+        resizes.reset();
+        resizeNanos.reset();
+        maxResizeNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "SetStatistics{lookups=" + getLookups()
+                + ", meanProbeLength=" + getMeanProbeLength()
+                + ", maxProbeLength=" + getMaxProbeLength()
+                + ", comparisons=" + getComparisons()
+                + ", rotations=" + getRotations()
+                + ", resizes=" + getResizes()
+                + ", resizeNanos=" + getResizeNanos()
+                + ", maxResizeNanos=" + getMaxResizeNanos() + "}";
+    }
+}
@@ -0,0 +1,31 @@
+package ru.mail.polis;
+
+/**
+ * JMX view of {@link SetStatistics}.
+ */
+public interface SetStatisticsMBean {
+
+    long getLookups();
+
+    double getMeanProbeLength();
+
+    long getMaxProbeLength();
+
+    /**
+     * @return number of lookups by probe length, the last element counts
+     * all lookups of {@code histogram.length - 1} probes and more
+     */
+    long[] getProbeHistogram();
+
+    long getComparisons();
+
+    long getRotations();
+
+    long getResizes();
+
+    long getResizeNanos();
+
+    long getMaxResizeNanos();
+
+    void reset();
+}
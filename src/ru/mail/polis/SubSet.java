@@ -0,0 +1,280 @@
+package ru.mail.polis;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * Live view of the elements of a tree between two optional bounds.
+ * Navigation is delegated to the tree and then clipped to the bounds;
+ * iteration uses a bounded iterator of the tree.
+ */
+abstract class SubSet<E extends Comparable<E>> implements INavigableSet<E> {
+
+    private final INavigableSet<E> set;
+    private final Comparator<E> comparator;
+    private final E lo;
+    private final boolean loInclusive;
+    private final E hi;
+    private final boolean hiInclusive;
+
+    /**
+     * @param set        backing tree
+     * @param comparator comparator of the tree, null for natural ordering
+     * @param lo         low bound, null if none
+     * @param hi         high bound, null if none
+     */
+    SubSet(INavigableSet<E> set, Comparator<E> comparator, E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+        this.set = set;
+        this.comparator = comparator;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+    }
+
+    /**
+     * @return iterator of the backing tree from the {@code from} bound to the {@code to} one
+     */
+    abstract Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive, boolean descending);
+
+    /**
+     * @return a view of the same tree with other bounds
+     */
+    abstract SubSet<E> create(E lo, boolean loInclusive, E hi, boolean hiInclusive);
+
+    @Override
+    public int size() {
+        if (set instanceof IOrderStatisticSet) {
+            IOrderStatisticSet<E> ranked = (IOrderStatisticSet<E>) set;
+            int from = 0;
+            if (lo != null) {
+                from = ranked.rank(lo);
+                if (!loInclusive && set.contains(lo)) {
+                    from++;
+                }
+            }
+            int to = set.size();
+            if (hi != null) {
+                to = ranked.rank(hi);
+                if (hiInclusive && set.contains(hi)) {
+                    to++;
+                }
+            }
+            return Math.max(to - from, 0);
+        }
+        int size = 0;
+        for (Iterator<E> it = iterator(); it.hasNext(); it.next()) {
+            size++;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return firstOrNull() == null;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        return inRange(value) && set.contains(value);
+    }
+
+    @Override
+    public boolean add(E value) {
+        if (!inRange(value)) {
+            throw new IllegalArgumentException("Value out of range");
+        }
+        return set.add(value);
+    }
+
+    @Override
+    public boolean remove(E value) {
+        return inRange(value) && set.remove(value);
+    }
+
+    @Override
+    public E first() {
+        E first = firstOrNull();
+        if (first == null) {
+            throw new NoSuchElementException("Set is empty, no first element");
+        }
+        return first;
+    }
+
+    @Override
+    public E last() {
+        E last = lastOrNull();
+        if (last == null) {
+            throw new NoSuchElementException("Set is empty, no last element");
+        }
+        return last;
+    }
+
+    @Override
+    public List<E> inorderTraverse() {
+        List<E> res = new ArrayList<>();
+        for (E value : this) {
+            res.add(value);
+        }
+        return res;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return iterator(lo, loInclusive, hi, hiInclusive, false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return iterator(hi, hiInclusive, lo, loInclusive, true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    @Override
+    public INavigableSet<E> freeze() {
+        return new EytzingerSet<>(this, comparator);
+    }
+
+    @Override
+    public E floor(E value) {
+        if (tooHigh(value)) {
+            return lastOrNull();
+        }
+        E res = set.floor(value);
+        return res == null || tooLow(res) ? null : res;
+    }
+
+    @Override
+    public E ceiling(E value) {
+        if (tooLow(value)) {
+            return firstOrNull();
+        }
+        E res = set.ceiling(value);
+        return res == null || tooHigh(res) ? null : res;
+    }
+
+    @Override
+    public E higher(E value) {
+        if (tooLow(value)) {
+            return firstOrNull();
+        }
+        E res = set.higher(value);
+        return res == null || tooHigh(res) ? null : res;
+    }
+
+    @Override
+    public E lower(E value) {
+        if (tooHigh(value)) {
+            return lastOrNull();
+        }
+        E res = set.lower(value);
+        return res == null || tooLow(res) ? null : res;
+    }
+
+    @Override
+    public E pollFirst() {
+        E first = firstOrNull();
+        if (first != null) {
+            set.remove(first);
+        }
+        return first;
+    }
+
+    @Override
+    public E pollLast() {
+        E last = lastOrNull();
+        if (last != null) {
+            set.remove(last);
+        }
+        return last;
+    }
+
+    @Override
+    public INavigableSet<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        checkBound(from, fromInclusive);
+        checkBound(to, toInclusive);
+        if (compare(from, to) > 0) {
+            throw new IllegalArgumentException("from > to");
+        }
+        return create(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public INavigableSet<E> headSet(E to, boolean inclusive) {
+        checkBound(to, inclusive);
+        return create(lo, loInclusive, to, inclusive);
+    }
+
+    @Override
+    public INavigableSet<E> tailSet(E from, boolean inclusive) {
+        checkBound(from, inclusive);
+        return create(from, inclusive, hi, hiInclusive);
+    }
+
+    private E firstOrNull() {
+        E res;
+        if (lo == null) {
+            res = set.isEmpty() ? null : set.first();
+        } else {
+            res = loInclusive ? set.ceiling(lo) : set.higher(lo);
+        }
+        return res == null || tooHigh(res) ? null : res;
+    }
+
+    private E lastOrNull() {
+        E res;
+        if (hi == null) {
+            res = set.isEmpty() ? null : set.last();
+        } else {
+            res = hiInclusive ? set.floor(hi) : set.lower(hi);
+        }
+        return res == null || tooLow(res) ? null : res;
+    }
+
+    private boolean inRange(E value) {
+        return !tooLow(value) && !tooHigh(value);
+    }
+
+    private boolean tooLow(E value) {
+        if (lo == null) {
+            return false;
+        }
+        int cmp = compare(value, lo);
+        return cmp < 0 || cmp == 0 && !loInclusive;
+    }
+
+    private boolean tooHigh(E value) {
+        if (hi == null) {
+            return false;
+        }
+        int cmp = compare(value, hi);
+        return cmp > 0 || cmp == 0 && !hiInclusive;
+    }
+
+    /**
+     * A bound of a nested view must not include anything outside of this view.
+     */
+    private void checkBound(E bound, boolean inclusive) {
+        if (bound == null) {
+            throw new NullPointerException("Value is null");
+        }
+        if (inclusive ? !inRange(bound)
+                : (tooLow(bound) && compare(bound, lo) != 0 || tooHigh(bound) && compare(bound, hi) != 0)) {
+            throw new IllegalArgumentException("Bound out of range");
+        }
+    }
+
+    private int compare(E v1, E v2) {
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+}
@@ -0,0 +1,288 @@
+package ru.mail.polis;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * Open addressing in the style of Swiss tables: the slots are split into
+ * groups of 8, and a parallel array of control bytes keeps 7 bits of the
+ * hash of every full slot, or marks it empty or deleted. A lookup reads the
+ * control bytes of a whole group as one {@code long} and finds the slots
+ * with matching hash bits by bit tricks (SWAR), so keys are compared only
+ * for those candidates, one in 128 of the other slots on average. Groups
+ * are probed quadratically, load factor is up to 7/8.
+ */
+public class SwissHashTable<E extends Comparable<E>> implements ISet<E> {
+
+    private static final VarHandle GROUP;
+
+    static {
+        GROUP = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static final int GROUP_SIZE = 8;
+    private static final byte EMPTY = (byte) 0x80; //1000_0000
+    private static final byte DELETED = (byte) 0xFE; //1111_1110, у занятых старший бит 0
+    private static final long LSB = 0x0101010101010101L;
+    private static final long MSB = 0x8080808080808080L;
+
+    private final int INITIAL_CAPACITY = 16;
+    private final Comparator<E> comparator;
+    private byte[] ctrl;
+    private Object[] slots;
+    private int size;
+    private int deleted;
+    private SetMetrics metrics;
+
+    public SwissHashTable() {
+        this(null);
+    }
+
+    public SwissHashTable(Comparator<E> comparator) {
+        this.comparator = comparator;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(E value) {
+        return indexOf(value) >= 0;
+    }
+
+    @Override
+    public boolean add(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        final int h = hash(value);
+        final long tag = (h & 0x7F) * LSB;
+        final int mask = groupMask();
+        int group = (h >>> 7) & mask;
+        int free = -1;
+        for (int step = 1; ; step++) {
+            final long word = group(group);
+            for (long m = match(word, tag); m != 0; m &= m - 1) {
+                final int idx = slot(group, m);
+                if (compare(value, elementAt(idx)) == 0) {
+                    return false;
+                }
+            }
+            if (free < 0) {
+                final long available = word & MSB;
+                if (available != 0) {
+                    free = slot(group, available);
+                }
+            }
+            if (matchEmpty(word) != 0) {
+                break;
+            }
+            group = (group + step) & mask;
+        }
+        if (ctrl[free] == DELETED) {
+            deleted--;
+        }
+        ctrl[free] = (byte) (h & 0x7F);
+        slots[free] = value;
+        size++;
+        resize();
+        return true;
+    }
+
+    @Override
+    public boolean remove(E value) {
+        final int idx = indexOf(value);
+        if (idx < 0) {
+            return false;
+        }
+        slots[idx] = null;
+        //поиск всегда останавливается на группе, где есть пустая ячейка, поэтому
+        //в ней удалённую ячейку можно сразу сделать пустой, иначе нужно "надгробие"
+        if (matchEmpty(group(idx / GROUP_SIZE)) != 0) {
+            ctrl[idx] = EMPTY;
+        } else {
+            ctrl[idx] = DELETED;
+            deleted++;
+        }
+        size--;
+        return true;
+    }
+
+    @Override
+    public void setMetrics(SetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Looks the keys up in groups: first hashes them all, then loads the
+     * control bytes of their first groups, then the first candidate slots,
+     * and only then compares.
+     */
+    @Override
+    public void containsAll(E[] keys, BitSet out) {
+        final int mask = groupMask();
+        final int[] hashes = new int[Batch.GROUP];
+        final long[] words = new long[Batch.GROUP];
+        final Object[] candidates = new Object[Batch.GROUP]; //только чтобы загрузить ячейки
+        for (int from = 0; from < keys.length; from += Batch.GROUP) {
+            final int n = Math.min(Batch.GROUP, keys.length - from);
+            for (int i = 0; i < n; i++) {
+                if (keys[from + i] == null) {
+                    throw new NullPointerException("Value is null");
+                }
+                hashes[i] = hash(keys[from + i]);
+            }
+            for (int i = 0; i < n; i++) {
+                words[i] = group((hashes[i] >>> 7) & mask);
+            }
+            for (int i = 0; i < n; i++) {
+                final long m = match(words[i], (hashes[i] & 0x7F) * LSB);
+                candidates[i] = m != 0 ? slots[slot((hashes[i] >>> 7) & mask, m)] : null;
+            }
+            for (int i = 0; i < n; i++) {
+                out.set(from + i, indexOf(keys[from + i], hashes[i]) >= 0);
+            }
+        }
+    }
+
+    @Override
+    public boolean addAll(E[] keys) {
+        return Batch.addAll(this, keys);
+    }
+
+    private int indexOf(E value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        return indexOf(value, hash(value));
+    }
+
+    private int indexOf(E value, int h) {
+        final long tag = (h & 0x7F) * LSB;
+        final int mask = groupMask();
+        int group = (h >>> 7) & mask;
+        int res = -1;
+        int step = 1;
+        search:
+        for (; ; step++) {
+            final long word = group(group);
+            for (long m = match(word, tag); m != 0; m &= m - 1) {
+                final int idx = slot(group, m);
+                if (compare(value, elementAt(idx)) == 0) {
+                    res = idx;
+                    break search;
+                }
+            }
+            if (matchEmpty(word) != 0) {
+                break;
+            }
+            group = (group + step) & mask;
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.probed(step);
+        }
+        return res;
+    }
+
+    /**
+     * Multiplicative mixing: the low 7 bits go to the control byte, the rest
+     * choose the group, so both depend on all bits of the hash code.
+     */
+    private static int hash(Object value) {
+        final int h = value.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+
+    private long group(int group) {
+        return (long) GROUP.get(ctrl, group * GROUP_SIZE);
+    }
+
+    /**
+     * @return high bits set in the bytes equal to the tag, rarely also in a
+     * byte above a matching one, which comparing the keys rules out
+     */
+    private static long match(long word, long tag) {
+        final long x = word ^ tag;
+        return (x - LSB) & ~x & MSB;
+    }
+
+    /**
+     * @return high bits set in the empty bytes: the only ones with bits 7 and 6 equal to 1 and 0
+     */
+    private static long matchEmpty(long word) {
+        return word & ~(word << 1) & MSB;
+    }
+
+    private static int slot(int group, long match) {
+        return group * GROUP_SIZE + (Long.numberOfTrailingZeros(match) >>> 3);
+    }
+
+    private int groupMask() {
+        return ctrl.length / GROUP_SIZE - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int index) {
+        return (E) slots[index];
+    }
+
+    private int compare(E v1, E v2) {
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.compared();
+        }
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    private void allocate(int capacity) {
+        ctrl = new byte[capacity];
+        Arrays.fill(ctrl, EMPTY);
+        slots = new Object[capacity];
+        deleted = 0;
+    }
+
+    /**
+     * Rehashes when live elements plus tombstones reach load factor 7/8.
+     * If a quarter of the occupied slots or more are tombstones the table
+     * is compacted in place (same capacity), otherwise its capacity is doubled.
+     */
+    private void resize() {
+        final int capacity = ctrl.length;
+        if ((size + deleted) * 8L < capacity * 7L) {
+            return;
+        }
+        final long start = SetMetrics.ENABLED ? System.nanoTime() : 0;
+        final byte[] oldCtrl = ctrl;
+        final Object[] oldSlots = slots;
+        allocate(deleted * 4 >= size + deleted ? capacity : capacity << 1);
+        final int mask = groupMask();
+        for (int i = 0; i < oldCtrl.length; i++) {
+            if (oldCtrl[i] >= 0) {
+                //все элементы уникальны, сравнивать не нужно
+                final int h = hash(oldSlots[i]);
+                int group = (h >>> 7) & mask;
+                long available;
+                for (int step = 1; (available = group(group) & MSB) == 0; step++) {
+                    group = (group + step) & mask;
+                }
+                final int idx = slot(group, available);
+                ctrl[idx] = (byte) (h & 0x7F);
+                slots[idx] = oldSlots[i];
+            }
+        }
+        if (SetMetrics.ENABLED && metrics != null) {
+            metrics.resized(capacity, ctrl.length, System.nanoTime() - start);
+        }
+    }
+}
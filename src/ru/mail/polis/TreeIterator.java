@@ -0,0 +1,182 @@
+package ru.mail.polis;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Lazy in-order iterator over a binary search tree. Keeps the unvisited
+ * ancestors on an array stack, so it allocates nothing per element.
+ * A bounded iterator seeks its first element in O(log n) and stops at the
+ * last one, so a range scan of k elements costs O(log n + k).
+ *
+ * @param <N> node type of the tree
+ * @param <E> element type
+ */
+abstract class TreeIterator<N, E> implements Iterator<E> {
+
+    private final N nil;
+    private final boolean descending;
+    private final Comparator<? super E> comparator;
+    private final E to;
+    private final boolean toInclusive;
+    private Object[] stack = new Object[16];
+    private int depth;
+
+    /**
+     * @param root       root of the tree
+     * @param nil        node that terminates the branches: null or a sentinel
+     * @param descending if true, elements are returned from the highest to the lowest
+     */
+    TreeIterator(N root, N nil, boolean descending) {
+        this.nil = nil;
+        this.descending = descending;
+        this.comparator = null;
+        this.to = null;
+        this.toInclusive = false;
+        pushSpine(root);
+    }
+
+    /**
+     * @param comparator order of the tree
+     * @param from       bound where the iteration starts (the lower one when ascending), null if none
+     * @param to         bound where the iteration ends (the higher one when ascending), null if none
+     */
+    TreeIterator(N root, N nil, boolean descending, Comparator<? super E> comparator,
+                 E from, boolean fromInclusive, E to, boolean toInclusive) {
+        this.nil = nil;
+        this.descending = descending;
+        this.comparator = comparator;
+        this.to = to;
+        this.toInclusive = toInclusive;
+        if (from == null) {
+            pushSpine(root);
+        } else {
+            seek(root, from, fromInclusive);
+        }
+        checkEnd();
+    }
+
+    abstract N left(N node);
+
+    abstract N right(N node);
+
+    abstract E value(N node);
+
+    @Override
+    public boolean hasNext() {
+        return depth > 0;
+    }
+
+    @Override
+    public E next() {
+        return value(nextNode());
+    }
+
+    @SuppressWarnings("unchecked")
+    N nextNode() {
+        if (depth == 0) {
+            throw new NoSuchElementException();
+        }
+        N node = (N) stack[--depth];
+        stack[depth] = null;
+        pushSpine(descending ? left(node) : right(node));
+        checkEnd();
+        return node;
+    }
+
+    /**
+     * Merges the remaining nodes with ascending elements, creating nodes for
+     * the new ones, for a tree to be rebuilt from the result. The tree is not
+     * touched, so if the input turns out to be invalid, nothing has changed.
+     *
+     * @param count      number of the remaining nodes
+     * @param comparator order of the tree
+     * @return the nodes of the union in order
+     * @throws NullPointerException     if an element is null
+     * @throws IllegalArgumentException if the elements are not in ascending order
+     */
+    Object[] merge(int count, Iterator<? extends E> sorted, int size,
+                   Function<? super E, ? extends N> create, Comparator<? super E> comparator) {
+        final Object[] merged = new Object[count + size];
+        int n = 0;
+        N next = depth > 0 ? nextNode() : nil;
+        E prev = null;
+        for (int k = 0; k < size; k++) {
+            E value = sorted.next();
+            if (value == null) {
+                throw new NullPointerException("Value is null");
+            }
+            if (prev != null && comparator.compare(prev, value) >= 0) {
+                throw new IllegalArgumentException("Elements are not in ascending order");
+            }
+            prev = value;
+            while (next != nil && comparator.compare(value(next), value) < 0) {
+                merged[n++] = next;
+                next = depth > 0 ? nextNode() : nil;
+            }
+            if (next != nil && comparator.compare(value(next), value) == 0) {
+                continue;
+            }
+            merged[n++] = create.apply(value);
+        }
+        for (; next != nil; next = depth > 0 ? nextNode() : nil) {
+            merged[n++] = next;
+        }
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+
+    private void push(N node) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth << 1);
+        }
+        stack[depth++] = node;
+    }
+
+    private void pushSpine(N node) {
+        while (node != nil) {
+            push(node);
+            node = descending ? right(node) : left(node);
+        }
+    }
+
+    /**
+     * Pushes the ancestors of the first element past the bound, like
+     * {@link #pushSpine} does for the first element of the whole tree.
+     */
+    private void seek(N node, E from, boolean inclusive) {
+        while (node != nil) {
+            int cmp = comparator.compare(value(node), from);
+            if (descending) {
+                cmp = -cmp;
+            }
+            if (cmp > 0 || cmp == 0 && inclusive) {
+                push(node);
+                node = descending ? right(node) : left(node);
+            } else {
+                node = descending ? left(node) : right(node);
+            }
+        }
+    }
+
+    /**
+     * Elements come in order, so once the next one is past the end bound
+     * the iteration is over.
+     */
+    @SuppressWarnings("unchecked")
+    private void checkEnd() {
+        if (to == null || depth == 0) {
+            return;
+        }
+        int cmp = comparator.compare(value((N) stack[depth - 1]), to);
+        if (descending) {
+            cmp = -cmp;
+        }
+        if (cmp > 0 || cmp == 0 && !toInclusive) {
+            Arrays.fill(stack, 0, depth, null);
+            depth = 0;
+        }
+    }
+}
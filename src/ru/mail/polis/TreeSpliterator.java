@@ -0,0 +1,151 @@
+package ru.mail.polis;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * In-order spliterator over a binary search tree that splits by subtrees.
+ * <p>
+ * The remaining elements are: the whole subtree {@code curr}, then every
+ * stack entry from the top down, each followed by its right subtree. The
+ * bottom entry may be a {@code fence}, whose right subtree was handed over
+ * to another spliterator. A split hands the stack (the prefix) to a new
+ * spliterator and keeps the right subtree of the bottom-most entry, so for a
+ * fresh spliterator the first split is at the root.
+ *
+ * @param <N> node type of the tree
+ * @param <E> element type
+ */
+abstract class TreeSpliterator<N, E> implements Spliterator<E> {
+
+    private final N nil;
+    private final Comparator<? super E> comparator;
+    private N curr;
+    private Object[] stack = new Object[16];
+    private int depth;
+    private N fence;
+    private long est;
+    private boolean sized;
+
+    /**
+     * @param root       root of the tree
+     * @param nil        node that terminates the branches: null or a sentinel
+     * @param comparator comparator of the tree, null for natural ordering
+     * @param size       number of elements in the tree
+     */
+    TreeSpliterator(N root, N nil, Comparator<? super E> comparator, int size) {
+        this.nil = nil;
+        this.comparator = comparator;
+        this.curr = root;
+        this.fence = nil;
+        this.est = size;
+        this.sized = true;
+    }
+
+    abstract N left(N node);
+
+    abstract N right(N node);
+
+    abstract E value(N node);
+
+    /**
+     * @return an empty spliterator of the same tree, to be filled by {@link #trySplit()}
+     */
+    abstract TreeSpliterator<N, E> create();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Spliterator<E> trySplit() {
+        pushSpine();
+        int bottom = 0;
+        if (depth > 0 && stack[0] == fence) {
+            bottom = 1;
+        }
+        if (bottom >= depth) {
+            return null;
+        }
+        N node = (N) stack[bottom];
+        N right = right(node);
+        if (right == nil) {
+            return null;
+        }
+        TreeSpliterator<N, E> prefix = create();
+        prefix.stack = Arrays.copyOfRange(stack, bottom, Math.max(depth, bottom + 16));
+        prefix.depth = depth - bottom;
+        prefix.fence = node;
+        Arrays.fill(stack, bottom, depth, null);
+        depth = bottom;
+        curr = right;
+        est >>>= 1;
+        prefix.est = est;
+        sized = false;
+        prefix.sized = false;
+        return prefix;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        N node = nextNode();
+        if (node == nil) {
+            return false;
+        }
+        action.accept(value(node));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super E> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        for (N node = nextNode(); node != nil; node = nextNode()) {
+            action.accept(value(node));
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return est;
+    }
+
+    @Override
+    public int characteristics() {
+        return (sized ? Spliterator.SIZED : 0)
+                | Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL;
+    }
+
+    @Override
+    public Comparator<? super E> getComparator() {
+        return comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private N nextNode() {
+        pushSpine();
+        if (depth == 0) {
+            return nil;
+        }
+        N node = (N) stack[--depth];
+        stack[depth] = null;
+        curr = node == fence ? nil : right(node);
+        if (sized) {
+            est--;
+        }
+        return node;
+    }
+
+    private void pushSpine() {
+        for (N node = curr; node != nil; node = left(node)) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth << 1);
+            }
+            stack[depth++] = node;
+        }
+        curr = nil;
+    }
+}